@@ -19,8 +19,10 @@
 
 package catrenet.action;
 
-import catrenet.algorithm.AlgorithmBase;
+import catrenet.algorithm.IRandomizedAlgorithm;
+import catrenet.algorithm.ReplicateRuns;
 import catrenet.io.ModelIO;
+import catrenet.model.CompiledReactionSystem;
 import catrenet.model.ReactionSystem;
 import catrenet.window.MainWindow;
 import catrenet.window.MainWindowController;
@@ -29,57 +31,64 @@ import javafx.scene.control.TextArea;
 import jloda.fx.util.AService;
 import jloda.fx.window.NotificationManager;
 import jloda.util.Pair;
-import jloda.util.StringUtils;
 
-import java.util.*;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
 
 /**
- * runs an algorithm multiple times
+ * runs a randomized algorithm multiple times
  * Daniel Huson, 8.2019
  */
 public class MultiRunAlgorithm {
     /**
-     * run an algorithm, return the resulting model and write to text area
+     * maximal number of distinct results that are listed in full, all results appear in the frequency table
+     */
+    public static final int MAX_LISTED_RESULTS = 100;
+
+    /**
+     * run a randomized algorithm multiple times, in parallel, and write the frequency table of all distinct results,
+     * followed by the most frequent results, to the text area
      *
+     * @param seed the seed from which the seeds of all runs are derived, reported in the output, so that the runs can be repeated
 	 */
-    public static void apply(MainWindow window, final ReactionSystem inputReactions, AlgorithmBase algorithm, TextArea textArea, int numberOfRuns, ChangeListener<Boolean> runningListener) {
+    public static void apply(MainWindow window, final ReactionSystem inputReactions, IRandomizedAlgorithm algorithm, TextArea textArea, int numberOfRuns, long seed, ChangeListener<Boolean> runningListener) {
         final MainWindowController controller = window.getController();
 
-        final AService<Collection<Pair<ReactionSystem, Integer>>> service = new AService<>(controller.getBottomFlowPane());
+        final AService<Pair<CompiledReactionSystem, List<ReplicateRuns.Result>>> service = new AService<>(controller.getBottomFlowPane());
         service.setCallable(() -> {
-            final Map<Set<String>, Pair<ReactionSystem, Integer>> names2reactions2counts = new HashMap<>();
-            for (int i = 0; i < numberOfRuns; i++) {
-                final ReactionSystem outputReactions = algorithm.apply(inputReactions, service.getProgressListener());
-                final Set<String> reactionNames = new HashSet<>(outputReactions.getReactionNames());
-                Pair<ReactionSystem, Integer> pair = names2reactions2counts.get(reactionNames);
-                if (pair == null) {
-                    pair = new Pair<>(outputReactions, 0);
-                    names2reactions2counts.put(reactionNames, pair);
-                }
-                pair.setSecond(pair.getSecond() + 1);
-            }
-            return names2reactions2counts.values();
+            final CompiledReactionSystem compiled = new CompiledReactionSystem(inputReactions);
+            return new Pair<>(compiled, ReplicateRuns.apply(compiled, algorithm, numberOfRuns, seed, service.getProgressListener()));
         });
 
         service.runningProperty().addListener(runningListener);
         service.setOnSucceeded((c) -> {
-            final Collection<Pair<ReactionSystem, Integer>> results = service.getValue();
+            final CompiledReactionSystem compiled = service.getValue().getFirst();
+            final List<ReplicateRuns.Result> results = service.getValue().getSecond();
 
             if (results.size() > 0) {
-                final String headLine = "Running algorithm " + algorithm.getClass().getSimpleName() + " " + numberOfRuns + " times produced " + results.size() + " results";
+                final String headLine = "Running algorithm " + algorithm.getClass().getSimpleName() + " " + numberOfRuns + " times (seed " + seed + ") produced " + results.size() + " results";
 
                 NotificationManager.showInformation(headLine);
                 window.getLogStream().println("\n" + headLine);
 
-                final StringBuilder buf = new StringBuilder();
-                int count = 0;
-                for (Pair<ReactionSystem, Integer> pair : results) {
-					final String algorithmName = StringUtils.fromCamelCase(algorithm.getClass().getSimpleName()).replaceAll("Algorithm", "");
-                    buf.append(String.format("# %s %d has %d reactions (and was seen %d/%d times)\n\n", algorithmName, ++count, pair.getFirst().size(), pair.getSecond(), numberOfRuns));
-                    buf.append(ModelIO.toString(pair.getFirst(), false, window.getDocument().getReactionNotation(), window.getDocument().getArrowNotation()));
-                    buf.append("\n");
+                final StringWriter w = new StringWriter();
+                try {
+                    w.write(String.format("# Runs: %d, seed: %d%n", numberOfRuns, seed));
+                    ReplicateRuns.writeTable(results, w);
+                    w.write("\n");
+                    for (ReplicateRuns.Result result : results.subList(0, Math.min(MAX_LISTED_RESULTS, results.size()))) {
+                        // the reaction system is only set up when listed, results are kept as reaction ids
+                        final ReactionSystem reactionSystem = compiled.toReactionSystem(algorithm.getName(), result.reactions());
+                        w.write(String.format("# %s %d has %d reactions (and was seen %d/%d times)\n\n", algorithm.getName(), result.id(), result.size(), result.count(), numberOfRuns));
+                        w.write(ModelIO.toString(reactionSystem, false, window.getDocument().getReactionNotation(), window.getDocument().getArrowNotation()));
+                        w.write("\n");
+                    }
+                    if (results.size() > MAX_LISTED_RESULTS)
+                        w.write(String.format("# (%d less frequent results not listed)\n", results.size() - MAX_LISTED_RESULTS));
+                } catch (IOException ignored) { // doesn't happen for a string writer
                 }
-                textArea.setText(buf.toString());
+                textArea.setText(w.toString());
             }
         });
         service.start();
@@ -20,9 +20,11 @@
 package catrenet.action;
 
 import catrenet.algorithm.AlgorithmBase;
+import catrenet.algorithm.AnalysisContext;
 import catrenet.algorithm.Importance;
 import catrenet.algorithm.MuCAFAlgorithm;
 import catrenet.io.ModelIO;
+import catrenet.io.ResultCache;
 import catrenet.model.ReactionSystem;
 import catrenet.window.MainWindow;
 import catrenet.window.MainWindowController;
@@ -44,6 +46,16 @@ public class RunAlgorithm {
      *
 	 */
     public static void apply(MainWindow window, final ReactionSystem inputReactions, AlgorithmBase algorithm, ChangeListener<Boolean> runningListener, boolean updateParsedInputTab) {
+        apply(window, new AnalysisContext(inputReactions), algorithm, runningListener, updateParsedInputTab);
+    }
+
+    /**
+     * run an algorithm on the input of an analysis context, return the resulting model and write to text area.
+     * Algorithms that are run on the same context share intermediate results such as the max RAF
+     *
+	 */
+    public static void apply(MainWindow window, final AnalysisContext context, AlgorithmBase algorithm, ChangeListener<Boolean> runningListener, boolean updateParsedInputTab) {
+        final ReactionSystem inputReactions = context.getInput();
         final MainWindowController controller = window.getController();
 
         if (updateParsedInputTab) {
@@ -57,11 +69,33 @@ public class RunAlgorithm {
         var result = window.getReactionSystem(algorithm.getName());
 		var service = new AService<Triplet<ReactionSystem, String, String>>(controller.getBottomFlowPane());
         service.setCallable(() -> {
-            final ReactionSystem outputReactions = algorithm.apply(inputReactions, service.getProgressListener());
+            final var progress = service.getProgressListener();
+            final var parameters = algorithm.getCacheParameters();
+            final var cache = (parameters != null && window.isUseResultCache() ? ResultCache.getInstance() : null);
+            final var key = (cache != null ? ResultCache.computeKey(context.getHash(), algorithm.getName(), parameters) : null);
+
+            var outputReactions = (cache != null ? cache.getReactionSystem(key) : null);
+            if (outputReactions == null) {
+                outputReactions = algorithm.apply(context, progress);
+                if (cache != null && !progress.isUserCancelled())
+                    cache.putReactionSystem(key, outputReactions);
+            }
 
             if (controller.getComputeImportanceCheckMenuItem().isSelected() && !(algorithm instanceof MuCAFAlgorithm)) {
-                var infoLine1 = Importance.toStringFoodImportance(Importance.computeFoodImportance(inputReactions, outputReactions, algorithm, service.getProgressListener()));
-                var infoLine2 = Importance.toStringReactionImportance(Importance.computeReactionImportance(inputReactions, outputReactions, algorithm, service.getProgressListener()));
+                final var foodKey = (cache != null ? ResultCache.computeKey(context.getHash(), algorithm.getName() + " food importance", parameters) : null);
+                var infoLine1 = (cache != null ? cache.get(foodKey) : null);
+                if (infoLine1 == null) {
+                    infoLine1 = Importance.toStringFoodImportance(Importance.computeFoodImportance(context, outputReactions, algorithm, progress));
+                    if (cache != null && !progress.isUserCancelled())
+                        cache.put(foodKey, infoLine1);
+                }
+                final var reactionKey = (cache != null ? ResultCache.computeKey(context.getHash(), algorithm.getName() + " reaction importance", parameters) : null);
+                var infoLine2 = (cache != null ? cache.get(reactionKey) : null);
+                if (infoLine2 == null) {
+                    infoLine2 = Importance.toStringReactionImportance(Importance.computeReactionImportance(context, outputReactions, algorithm, progress));
+                    if (cache != null && !progress.isUserCancelled())
+                        cache.put(reactionKey, infoLine2);
+                }
                 return new Triplet<>(outputReactions, infoLine1, infoLine2);
 
             } else {
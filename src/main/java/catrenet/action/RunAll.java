@@ -46,24 +46,22 @@ public class RunAll {
 
         if (VerifyInput.verify(window)) {
             final ReactionSystem inputReactions = window.getInputReactionSystem();
+            final AnalysisContext context = new AnalysisContext(inputReactions); // all algorithms share the max RAF, max CAF etc.
 
-            RunAlgorithm.apply(window, inputReactions, new MaxCAFAlgorithm(), runningListener, true);
-            RunAlgorithm.apply(window, inputReactions, new MaxRAFAlgorithm(), runningListener, false);
-            RunAlgorithm.apply(window, inputReactions, new StrictlyAutocatalyticMaxRAFAlgorithm(), runningListener, false);
-            RunAlgorithm.apply(window, inputReactions, new MaxPseudoRAFAlgorithm(), runningListener, false);
-            RunAlgorithm.apply(window, inputReactions, new TrivialCAFsAlgorithm(), runningListener, false);
-            RunAlgorithm.apply(window, inputReactions, new TrivialRAFsAlgorithm(), runningListener, false);
+            RunAlgorithm.apply(window, context, new MaxCAFAlgorithm(), runningListener, true);
+            RunAlgorithm.apply(window, context, new MaxRAFAlgorithm(), runningListener, false);
+            RunAlgorithm.apply(window, context, new StrictlyAutocatalyticMaxRAFAlgorithm(), runningListener, false);
+            RunAlgorithm.apply(window, context, new MaxPseudoRAFAlgorithm(), runningListener, false);
+            RunAlgorithm.apply(window, context, new TrivialCAFsAlgorithm(), runningListener, false);
+            RunAlgorithm.apply(window, context, new TrivialRAFsAlgorithm(), runningListener, false);
 
             if (inputReactions.isInhibitorsPresent()) {
-                RunAlgorithm.apply(window, inputReactions, new MuCAFAlgorithm(), runningListener, false);
-                RunAlgorithm.apply(window, inputReactions, new URAFAlgorithm(), runningListener, false);
+                RunAlgorithm.apply(window, context, new MuCAFAlgorithm(), runningListener, false);
+                RunAlgorithm.apply(window, context, new URAFAlgorithm(), runningListener, false);
             }
 
             window.getDocument().setReactionDependencyNetwork(null);
-            if (window.getInputReactionSystem().getReactions().size() <= 100) {
-                ComputeReactionDependencies.run(window);
-            } else
-                System.err.println("Too many reactions, not automatically computing reaction dependency network");
+            ComputeReactionDependencies.run(window);
             window.getDocument().setMoleculeDependencyNetwork(null);
             ComputeMoleculeDependencies.run(window);
         }
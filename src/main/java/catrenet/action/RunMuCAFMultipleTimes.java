@@ -31,9 +31,11 @@ import javafx.scene.control.TextArea;
 import javafx.scene.control.TextInputDialog;
 import javafx.stage.Stage;
 import jloda.fx.util.ProgramProperties;
+import jloda.fx.window.NotificationManager;
 import jloda.util.NumberUtils;
 
 import java.util.Optional;
+import java.util.Random;
 
 /**
  * run the mu CAF heuristic multiple times
@@ -49,7 +51,7 @@ public class RunMuCAFMultipleTimes implements IDescribed {
         final TextInputDialog dialog = new TextInputDialog("10");
         dialog.setTitle("Setup mu-CAF algorithm - " + Version.SHORT_DESCRIPTION);
         dialog.setHeaderText("Randomized mu-CAF algorithm");
-        dialog.setContentText("Number of runs:");
+        dialog.setContentText("Number of runs (and optional seed):");
         ((Stage) dialog.getDialogPane().getScene().getWindow()).getIcons().addAll(ProgramProperties.getProgramIconsFX());
 
         final StringProperty inputString = new SimpleStringProperty();
@@ -57,9 +59,20 @@ public class RunMuCAFMultipleTimes implements IDescribed {
 
         result.ifPresent(name -> inputString.set(result.get()));
 
-        if (NumberUtils.isInteger(inputString.get()) && NumberUtils.parseInt(inputString.get()) > 0) {
+        final String[] tokens = (inputString.get() != null ? inputString.get().trim().split("\\s+") : new String[0]);
+        if (tokens.length > 0 && NumberUtils.isInteger(tokens[0]) && NumberUtils.parseInt(tokens[0]) > 0) {
+            final long seed;
+            if (tokens.length > 1) {
+                try {
+                    seed = Long.parseLong(tokens[1]);
+                } catch (NumberFormatException ex) {
+                    NotificationManager.showError("Invalid seed: " + tokens[1]);
+                    return;
+                }
+            } else
+                seed = new Random().nextLong(); // new runs each time, the seed is reported so that they can be repeated
 			final TextArea textArea = window.getTabManager().getTextTab(MuCAFAlgorithm.Name, null).getTextArea();
-            MultiRunAlgorithm.apply(window, window.getInputReactionSystem(), new MuCAFAlgorithm(), textArea, NumberUtils.parseInt(inputString.get()), runningListener);
+            MultiRunAlgorithm.apply(window, window.getInputReactionSystem(), new MuCAFAlgorithm(), textArea, NumberUtils.parseInt(tokens[0]), seed, runningListener);
         }
     }
 }
@@ -19,6 +19,7 @@
 
 package catrenet.algorithm;
 
+import catrenet.model.CompiledReactionSystem;
 import catrenet.model.ReactionSystem;
 import jloda.util.CanceledException;
 import jloda.util.PluginClassLoader;
@@ -50,6 +51,38 @@ public abstract class AlgorithmBase implements IDescribed {
      */
     abstract public ReactionSystem apply(ReactionSystem input, ProgressListener progress) throws CanceledException;
 
+    /**
+     * run the algorithm on a compiled reaction system.
+     * Algorithms that have an integer-indexed implementation override this, all others run on the source reaction system
+     *
+     * @return output
+     */
+    public ReactionSystem apply(CompiledReactionSystem input, ProgressListener progress) throws CanceledException {
+        return apply(input.getReactionSystem(), progress);
+    }
+
+    /**
+     * run the algorithm on the input of an analysis context.
+     * Algorithms that use intermediate results, such as the max RAF, override this to take them from the context,
+     * all others run on the compiled input
+     *
+     * @return output
+     */
+    public ReactionSystem apply(AnalysisContext context, ProgressListener progress) throws CanceledException {
+        return apply(context.getCompiled(), progress);
+    }
+
+    /**
+     * gets the parameters that the output of this algorithm depends on, used to cache outputs, see {@link catrenet.io.ResultCache}.
+     * Outputs are only cached for algorithms that override this, so an algorithm that has settings or random choices
+     * is never served a stale output by default
+     *
+     * @return parameters, or null, if the output must not be cached, because it is not determined by the input and parameters
+     */
+    public String getCacheParameters() {
+        return null;
+    }
+
     /**
      * list all known algorithms
      *
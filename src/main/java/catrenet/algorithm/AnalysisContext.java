@@ -0,0 +1,162 @@
+/*
+ *  AnalysisContext.java Copyright (C) 2025 Daniel H. Huson
+ *
+ *  (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package catrenet.algorithm;
+
+import catrenet.io.ResultCache;
+import catrenet.model.CompiledReactionSystem;
+import catrenet.model.ReactionSystem;
+import jloda.util.CanceledException;
+import jloda.util.progress.ProgressListener;
+
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * the intermediate results that several algorithms need for the same input, such as the compiled input, the max RAF
+ * and the max CAF. Each is computed once, on first request, and then shared, so all returned objects must not be modified.
+ * Different intermediates can be computed concurrently, a thread that requests one that is being computed waits for it,
+ * polling its progress listener for cancellation.
+ * The input must not be changed while the context is in use
+ */
+public class AnalysisContext {
+	private final ReactionSystem input;
+
+	private final Memo<String> hash = new Memo<>("hash");
+	private final Memo<CompiledReactionSystem> compiled = new Memo<>("compiled input");
+	private final Memo<BitSet> maxRAFReactions = new Memo<>("max RAF");
+	private final Memo<ReactionSystem> maxRAF = new Memo<>("max RAF");
+	private final Memo<CompiledReactionSystem> compiledMaxRAF = new Memo<>("compiled max RAF");
+	private final Memo<ReactionSystem> maxCAF = new Memo<>("max CAF");
+
+	/**
+	 * constructor
+	 *
+	 * @param input the input reaction system
+	 */
+	public AnalysisContext(ReactionSystem input) {
+		this.input = input;
+	}
+
+	public ReactionSystem getInput() {
+		return input;
+	}
+
+	/**
+	 * gets the canonical hash of the input, used as key of the result cache, see {@link ResultCache#computeHash(ReactionSystem)}
+	 */
+	public String getHash() {
+		return hash.get(() -> ResultCache.computeHash(input));
+	}
+
+	/**
+	 * gets the compiled input
+	 */
+	public CompiledReactionSystem getCompiled() {
+		return compiled.get(() -> new CompiledReactionSystem(input));
+	}
+
+	/**
+	 * gets the reactions of the max RAF, as reaction ids of the compiled input
+	 */
+	public BitSet getMaxRAFReactions(ProgressListener progress) throws CanceledException {
+		return maxRAFReactions.compute(() -> MaxRAFAlgorithm.computeMaxRAF(getCompiled(), getCompiled().getFoods(), getCompiled().getAllReactions(), progress), progress);
+	}
+
+	/**
+	 * gets the max RAF
+	 */
+	public ReactionSystem getMaxRAF(ProgressListener progress) throws CanceledException {
+		return maxRAF.compute(() -> getCompiled().toReactionSystem(MaxRAFAlgorithm.Name, getMaxRAFReactions(progress)), progress);
+	}
+
+	/**
+	 * gets the max RAF compiled on its own, using the food set of the input, as needed by algorithms that search the max RAF
+	 */
+	public CompiledReactionSystem getCompiledMaxRAF(ProgressListener progress) throws CanceledException {
+		return compiledMaxRAF.compute(() -> new CompiledReactionSystem(input.getFoods(), getCompiled().getReactions(getMaxRAFReactions(progress))), progress);
+	}
+
+	/**
+	 * gets the max CAF
+	 */
+	public ReactionSystem getMaxCAF(ProgressListener progress) throws CanceledException {
+		return maxCAF.compute(() -> new MaxCAFAlgorithm().apply(getCompiled(), progress), progress);
+	}
+
+	/**
+	 * computes a value
+	 */
+	private interface Computation<T> {
+		T apply() throws CanceledException;
+	}
+
+	/**
+	 * a value that is computed on first request. If the computation is canceled, then the next request tries again.
+	 * A thread that requests the value while another thread computes it waits, but remains cancelable
+	 */
+	private static class Memo<T> {
+		private final String name;
+		private final ReentrantLock lock = new ReentrantLock();
+		private volatile T value;
+
+		Memo(String name) {
+			this.name = name;
+		}
+
+		T compute(Computation<T> computation, ProgressListener progress) throws CanceledException {
+			if (value == null) {
+				try {
+					if (!lock.tryLock()) {
+						progress.setSubtask("waiting for " + name);
+						while (!lock.tryLock(100, TimeUnit.MILLISECONDS))
+							progress.checkForCancel();
+					}
+				} catch (InterruptedException ex) {
+					throw new CanceledException();
+				}
+				try {
+					if (value == null)
+						value = computation.apply();
+				} finally {
+					lock.unlock();
+				}
+			}
+			return value;
+		}
+
+		/**
+		 * only used for computations that are fast and can't be canceled
+		 */
+		T get(Supplier<T> supplier) {
+			if (value == null) {
+				lock.lock();
+				try {
+					if (value == null)
+						value = supplier.get();
+				} finally {
+					lock.unlock();
+				}
+			}
+			return value;
+		}
+	}
+}
@@ -0,0 +1,256 @@
+/*
+ *  BitSlicedMaxRAF.java Copyright (C) 2025 Daniel H. Huson
+ *
+ *  (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package catrenet.algorithm;
+
+import catrenet.model.CompiledReactionSystem;
+import jloda.util.CanceledException;
+import jloda.util.progress.ProgressListener;
+
+import java.util.BitSet;
+
+/**
+ * computes the max RAFs of up to 64 variants (scenarios) of the same reaction system in one pass: each molecule and
+ * each reaction carries a long mask, whose j-th bit indicates whether the molecule or reaction is present in scenario j.
+ * Scenarios differ in their food sets and in their sets of reactions, typically by knockouts.
+ * Keeps working arrays between calls, so use one instance per thread
+ */
+public class BitSlicedMaxRAF {
+	public static final int BATCH_SIZE = 64;
+
+	private final CompiledReactionSystem compiled;
+
+	private final long[] molecules;
+	private final long[] reactions;
+	private final int[] reactionQueue;
+	private final boolean[] queued;
+
+	/**
+	 * constructor
+	 *
+	 * @param compiled the compiled reaction system
+	 */
+	public BitSlicedMaxRAF(CompiledReactionSystem compiled) {
+		this.compiled = compiled;
+		molecules = new long[compiled.getNumberOfMolecules()];
+		reactions = new long[compiled.getNumberOfReactions()];
+		reactionQueue = new int[compiled.getNumberOfReactions()];
+		queued = new boolean[compiled.getNumberOfReactions()];
+	}
+
+	/**
+	 * computes the max RAFs of all scenarios
+	 *
+	 * @param foodMasks     for each molecule, the scenarios in which it is food
+	 * @param reactionMasks for each reaction, the scenarios in which it is present
+	 * @return for each reaction, the scenarios in which it is contained in the max RAF
+	 */
+	public long[] computeMaxRAFs(long[] foodMasks, long[] reactionMasks, ProgressListener progress) throws CanceledException {
+		System.arraycopy(reactionMasks, 0, reactions, 0, reactions.length);
+
+		var changed = true;
+		while (changed) {
+			progress.checkForCancel();
+			computeClosures(foodMasks);
+
+			changed = false;
+			for (var r = 0; r < reactions.length; r++) {
+				if (reactions[r] != 0L) {
+					final var keep = reactions[r] & computeReady(r) & computeCatalyzed(r) & ~computeInhibited(r);
+					if (keep != reactions[r]) {
+						reactions[r] = keep;
+						changed = true;
+					}
+				}
+			}
+		}
+		return reactions.clone();
+	}
+
+	/**
+	 * computes the max RAF of the given system for each of the given reaction knockouts. Scenario j has all
+	 * reactions except knockouts[j]
+	 *
+	 * @param knockouts at most 64 reactions to knock out
+	 * @return max RAF size for each knockout
+	 */
+	public int[] computeReactionKnockoutSizes(BitSet food, BitSet reactionSet, int[] knockouts, ProgressListener progress) throws CanceledException {
+		final var all = computeScenarios(knockouts.length);
+
+		final var foodMasks = new long[molecules.length];
+		for (var m = food.nextSetBit(0); m >= 0; m = food.nextSetBit(m + 1))
+			foodMasks[m] = all;
+		final var reactionMasks = new long[reactions.length];
+		for (var r = reactionSet.nextSetBit(0); r >= 0; r = reactionSet.nextSetBit(r + 1))
+			reactionMasks[r] = all;
+		for (var j = 0; j < knockouts.length; j++)
+			reactionMasks[knockouts[j]] &= ~(1L << j);
+
+		return countReactions(computeMaxRAFs(foodMasks, reactionMasks, progress), knockouts.length);
+	}
+
+	/**
+	 * computes the max RAF of the given system for each of the given food knockouts. Scenario j has all
+	 * food except knockouts[j]
+	 *
+	 * @param knockouts at most 64 molecules to remove from the food set
+	 * @return max RAF size for each knockout
+	 */
+	public int[] computeFoodKnockoutSizes(BitSet food, BitSet reactionSet, int[] knockouts, ProgressListener progress) throws CanceledException {
+		final var all = computeScenarios(knockouts.length);
+
+		final var foodMasks = new long[molecules.length];
+		for (var m = food.nextSetBit(0); m >= 0; m = food.nextSetBit(m + 1))
+			foodMasks[m] = all;
+		for (var j = 0; j < knockouts.length; j++)
+			foodMasks[knockouts[j]] &= ~(1L << j);
+		final var reactionMasks = new long[reactions.length];
+		for (var r = reactionSet.nextSetBit(0); r >= 0; r = reactionSet.nextSetBit(r + 1))
+			reactionMasks[r] = all;
+
+		return countReactions(computeMaxRAFs(foodMasks, reactionMasks, progress), knockouts.length);
+	}
+
+	/**
+	 * counts the number of reactions present in each scenario
+	 *
+	 * @param reactionMasks for each reaction, the scenarios in which it is present
+	 * @param scenarios     number of scenarios
+	 * @return counts
+	 */
+	public static int[] countReactions(long[] reactionMasks, int scenarios) {
+		final var counts = new int[scenarios];
+		for (var mask : reactionMasks) {
+			while (mask != 0L) {
+				final var j = Long.numberOfTrailingZeros(mask);
+				if (j < scenarios)
+					counts[j]++;
+				mask &= mask - 1;
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * computes the closures of the food sets with respect to the present reactions, ignoring catalysts and inhibitors.
+	 * Uses a worklist of reactions, a reaction is revisited whenever one of its inputs gains a scenario
+	 */
+	private void computeClosures(long[] foodMasks) {
+		System.arraycopy(foodMasks, 0, molecules, 0, molecules.length);
+
+		var top = 0;
+		for (var r = 0; r < reactions.length; r++) {
+			if (reactions[r] != 0L) {
+				reactionQueue[top++] = r;
+				queued[r] = true;
+			}
+		}
+		while (top > 0) {
+			final var r = reactionQueue[--top];
+			queued[r] = false;
+			if (compiled.isForward(r))
+				top = fire(reactions[r] & computeAll(compiled.getReactants(r)), compiled.getProducts(r), top);
+			if (compiled.isReverse(r))
+				top = fire(reactions[r] & computeAll(compiled.getProducts(r)), compiled.getReactants(r), top);
+		}
+	}
+
+	/**
+	 * adds the scenarios in which a reaction side fires to its outputs, and queues the reactions that consume any
+	 * output that has gained a scenario
+	 *
+	 * @return new top of queue
+	 */
+	private int fire(long scenarios, int[] outputs, int top) {
+		if (scenarios != 0L) {
+			for (var m : outputs) {
+				if ((molecules[m] | scenarios) != molecules[m]) {
+					molecules[m] |= scenarios;
+					for (var r : compiled.getReactionsWithReactant(m)) {
+						if (compiled.isForward(r) && reactions[r] != 0L && !queued[r]) {
+							reactionQueue[top++] = r;
+							queued[r] = true;
+						}
+					}
+					for (var r : compiled.getReactionsWithProduct(m)) {
+						if (compiled.isReverse(r) && reactions[r] != 0L && !queued[r]) {
+							reactionQueue[top++] = r;
+							queued[r] = true;
+						}
+					}
+				}
+			}
+		}
+		return top;
+	}
+
+	/**
+	 * the scenarios in which all given molecules are present
+	 */
+	private long computeAll(int[] ids) {
+		var mask = -1L;
+		for (var m : ids)
+			mask &= molecules[m];
+		return mask;
+	}
+
+	/**
+	 * the scenarios in which the reaction has all its reactants, or all its products if it runs in reverse direction
+	 */
+	private long computeReady(int r) {
+		var mask = 0L;
+		if (compiled.isForward(r))
+			mask |= computeAll(compiled.getReactants(r));
+		if (compiled.isReverse(r))
+			mask |= computeAll(compiled.getProducts(r));
+		return mask;
+	}
+
+	/**
+	 * the scenarios in which the reaction is catalyzed
+	 */
+	private long computeCatalyzed(int r) {
+		final var conjunctions = compiled.getCatalystConjunctions(r);
+		if (conjunctions.length == 0)
+			return -1L;
+		var mask = 0L;
+		for (var conjunction : conjunctions)
+			mask |= computeAll(conjunction);
+		return mask;
+	}
+
+	/**
+	 * the scenarios in which the reaction is inhibited
+	 */
+	private long computeInhibited(int r) {
+		var mask = 0L;
+		for (var m : compiled.getInhibitions(r))
+			mask |= molecules[m];
+		return mask;
+	}
+
+	/**
+	 * the mask of the first given number of scenarios
+	 */
+	private static long computeScenarios(int scenarios) {
+		if (scenarios > BATCH_SIZE)
+			throw new IllegalArgumentException("too many scenarios: " + scenarios);
+		return scenarios == BATCH_SIZE ? -1L : (1L << scenarios) - 1;
+	}
+}
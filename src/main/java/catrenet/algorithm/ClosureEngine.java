@@ -0,0 +1,202 @@
+/*
+ *  ClosureEngine.java Copyright (C) 2025 Daniel H. Huson
+ *
+ *  (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package catrenet.algorithm;
+
+import catrenet.model.CompiledReactionSystem;
+
+import java.util.BitSet;
+
+/**
+ * computes the closure of a set of molecules with respect to a set of reactions, ignoring catalysts and inhibitors.
+ * For each reaction and direction, keeps a counter of missing reactants, so that each reaction fires at most once per direction
+ * and the running time is linear in the total size of the reactions.
+ * Keeps working arrays between calls, so use one instance per thread
+ */
+public class ClosureEngine {
+	private final CompiledReactionSystem compiled;
+
+	private final int[] missing; // number of missing inputs, index 2r for forward direction of r, 2r+1 for reverse
+	private final int[] readySides;
+	private final int[] moleculeStack;
+
+	/**
+	 * consumes one level of a level-by-level closure computation
+	 */
+	public interface LevelConsumer {
+		/**
+		 * @param level     level, starting at 1
+		 * @param reactions reactions that first fire on this level
+		 * @param molecules molecules that are first produced on this level
+		 */
+		void accept(int level, BitSet reactions, BitSet molecules);
+	}
+
+	/**
+	 * constructor
+	 *
+	 * @param compiled the compiled reaction system
+	 */
+	public ClosureEngine(CompiledReactionSystem compiled) {
+		this.compiled = compiled;
+		missing = new int[2 * compiled.getNumberOfReactions()];
+		readySides = new int[2 * compiled.getNumberOfReactions()];
+		moleculeStack = new int[compiled.getNumberOfMolecules()];
+	}
+
+	public CompiledReactionSystem getCompiled() {
+		return compiled;
+	}
+
+	/**
+	 * computes the closure of the set of molecules with respect to the set of reactions, ignoring catalysts and inhibitors
+	 *
+	 * @param molecules initial molecules
+	 * @param reactions reactions to use
+	 * @return closure
+	 */
+	public BitSet computeClosure(BitSet molecules, BitSet reactions) {
+		return computeClosure(molecules, reactions, null);
+	}
+
+	/**
+	 * computes the closure of the set of molecules with respect to the set of reactions, ignoring catalysts and inhibitors
+	 *
+	 * @param molecules initial molecules
+	 * @param reactions reactions to use
+	 * @param fired     if non-null, all reactions that fire are added to this set
+	 * @return closure
+	 */
+	public BitSet computeClosure(BitSet molecules, BitSet reactions, BitSet fired) {
+		final var closure = (BitSet) molecules.clone();
+
+		var readyTop = initialize(closure, reactions);
+		var moleculeTop = 0;
+
+		while (readyTop > 0 || moleculeTop > 0) {
+			if (readyTop > 0) {
+				final var side = readySides[--readyTop];
+				final var r = (side >> 1);
+				if (fired != null)
+					fired.set(r);
+				for (var m : ((side & 1) == 0 ? compiled.getProducts(r) : compiled.getReactants(r))) {
+					if (!closure.get(m)) {
+						closure.set(m);
+						moleculeStack[moleculeTop++] = m;
+					}
+				}
+			} else {
+				readyTop = decrement(moleculeStack[--moleculeTop], reactions, readyTop);
+			}
+		}
+		return closure;
+	}
+
+	/**
+	 * computes the closure level by level. On each level, all reactions fire whose inputs were all available at the end
+	 * of the previous level
+	 *
+	 * @param molecules initial molecules
+	 * @param reactions reactions to use
+	 * @param consumer  is called for each level
+	 * @return closure
+	 */
+	public BitSet computeLevels(BitSet molecules, BitSet reactions, LevelConsumer consumer) {
+		final var closure = (BitSet) molecules.clone();
+		final var fired = new BitSet();
+
+		var readyTop = initialize(closure, reactions);
+		var level = 0;
+
+		while (readyTop > 0) {
+			final var levelReactions = new BitSet();
+			final var levelMolecules = new BitSet();
+
+			for (var i = 0; i < readyTop; i++) {
+				final var side = readySides[i];
+				final var r = (side >> 1);
+				if (!fired.get(r)) {
+					levelReactions.set(r);
+					for (var m : ((side & 1) == 0 ? compiled.getProducts(r) : compiled.getReactants(r))) {
+						if (!closure.get(m))
+							levelMolecules.set(m);
+					}
+				}
+			}
+			fired.or(levelReactions);
+			closure.or(levelMolecules);
+
+			readyTop = 0;
+			for (var m = levelMolecules.nextSetBit(0); m >= 0; m = levelMolecules.nextSetBit(m + 1)) {
+				readyTop = decrement(m, reactions, readyTop);
+			}
+			if (!levelReactions.isEmpty())
+				consumer.accept(++level, levelReactions, levelMolecules);
+		}
+		return closure;
+	}
+
+	/**
+	 * sets the missing counts for all reactions and determines all sides that are ready to fire
+	 *
+	 * @return number of ready sides
+	 */
+	private int initialize(BitSet available, BitSet reactions) {
+		var readyTop = 0;
+		for (var r = reactions.nextSetBit(0); r >= 0; r = reactions.nextSetBit(r + 1)) {
+			if (compiled.isForward(r)) {
+				missing[2 * r] = countMissing(available, compiled.getReactants(r));
+				if (missing[2 * r] == 0)
+					readySides[readyTop++] = 2 * r;
+			}
+			if (compiled.isReverse(r)) {
+				missing[2 * r + 1] = countMissing(available, compiled.getProducts(r));
+				if (missing[2 * r + 1] == 0)
+					readySides[readyTop++] = 2 * r + 1;
+			}
+		}
+		return readyTop;
+	}
+
+	/**
+	 * updates the missing counts for a newly available molecule
+	 *
+	 * @return new number of ready sides
+	 */
+	private int decrement(int m, BitSet reactions, int readyTop) {
+		for (var r : compiled.getReactionsWithReactant(m)) {
+			if (compiled.isForward(r) && reactions.get(r) && --missing[2 * r] == 0)
+				readySides[readyTop++] = 2 * r;
+		}
+		for (var r : compiled.getReactionsWithProduct(m)) {
+			if (compiled.isReverse(r) && reactions.get(r) && --missing[2 * r + 1] == 0)
+				readySides[readyTop++] = 2 * r + 1;
+		}
+		return readyTop;
+	}
+
+	private static int countMissing(BitSet available, int[] molecules) {
+		var count = 0;
+		for (var m : molecules) {
+			if (!available.get(m))
+				count++;
+		}
+		return count;
+	}
+}
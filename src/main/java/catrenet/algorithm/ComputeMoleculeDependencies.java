@@ -19,7 +19,8 @@
 
 package catrenet.algorithm;
 
-import catrenet.model.MoleculeType;
+import catrenet.io.ResultCache;
+import catrenet.model.CompiledReactionSystem;
 import catrenet.model.Reaction;
 import catrenet.model.ReactionSystem;
 import catrenet.window.MainWindow;
@@ -28,16 +29,17 @@ import jloda.fx.window.NotificationManager;
 import jloda.graph.Graph;
 import jloda.graph.Node;
 import jloda.util.CanceledException;
+import jloda.util.ProgramExecutorService;
 import jloda.util.StringUtils;
 import jloda.util.progress.ProgressListener;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.stream.Collectors;
-
-import static catrenet.algorithm.ComputeReactionDependencies.collectAllAncestors;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * computes the graph of dependencies between all molecules
@@ -50,7 +52,10 @@ public class ComputeMoleculeDependencies implements IDescribed {
 	}
 
 	/**
-	 * computes the graph of strict molecule dependencies. There is an edge from
+	 * computes the graph of strict molecule dependencies. There is an edge from a to b, if b is not contained in the
+	 * closure of the food set when all reactions that produce a are removed.
+	 * <p>
+	 * For each molecule a, a single knockout closure determines all b that depend on a. These closures are run in parallel
 	 *
 	 * @param progress            progress
 	 * @param inputReactionSystem input reactions
@@ -58,67 +63,74 @@ public class ComputeMoleculeDependencies implements IDescribed {
 	 * @throws CanceledException
 	 */
 	public static Graph apply(ProgressListener progress, ReactionSystem inputReactionSystem, Graph graph0) throws CanceledException {
-		var allFood = inputReactionSystem.getFoods();
 		var allReactions = new ArrayList<Reaction>();
 		for (var r : inputReactionSystem.getReactions()) {
 			allReactions.addAll(r.allAsForward());
 		}
-		var allMolecules = Utilities.computeClosure(allFood, allReactions);
+		var compiled = new CompiledReactionSystem(inputReactionSystem.getFoods(), allReactions);
+
+		var closure = new ClosureEngine(compiled).computeClosure(compiled.getFoods(), compiled.getAllReactions());
+		closure.andNot(compiled.getFoods());
+		var allMolecules = new TreeSet<>(compiled.getMolecules(closure)).stream().mapToInt(compiled::getMoleculeId).toArray();
 
 		var graph = (graph0 != null ? graph0 : new Graph());
 		graph.clear();
 
-		allFood.forEach(allMolecules::remove);
-
-		var moleculeNodeMap = new HashMap<MoleculeType, Node>();
+		var nodes = new Node[compiled.getNumberOfMolecules()];
 		for (var m : allMolecules) {
-			moleculeNodeMap.put(m, graph.newNode(m));
+			nodes[m] = graph.newNode(compiled.getMolecule(m));
 		}
 
-		progress.setTasks("Computing molecule dependencies", "");
-		progress.setMaximum(allMolecules.size());
+		progress.setTasks("Computing molecule dependencies", "Knockout closures");
+		progress.setMaximum(allMolecules.length);
 		progress.setProgress(0);
 
-		var ancestors = new HashSet<Node>();
-		var count = 0;
-		for (var b : allMolecules) {
-			progress.setSubtask("%,d of %,d".formatted(++count, allFood.size()));
-			var bNode = moleculeNodeMap.get(b);
-			ancestors.clear();
-			collectAllAncestors(bNode, ancestors);
-			for (var a : allMolecules) {
-				if (a != b) {
-					var aNode = moleculeNodeMap.get(a);
-					if (!ancestors.contains(aNode)) {
-						if (!isFoodGenerated(allFood, allReactions, b, a)) {
-							graph.newEdge(aNode, bNode);
-						}
+		var knockoutClosures = new BitSet[compiled.getNumberOfMolecules()]; // closure of food without the producers of a molecule
+		var engine = ThreadLocal.withInitial(() -> new ClosureEngine(compiled));
+		var done = new AtomicInteger();
+		var canceled = new AtomicBoolean(false);
+
+		var pool = new ForkJoinPool(ProgramExecutorService.getNumberOfCoresToUse());
+		try {
+			var future = pool.submit(() -> Arrays.stream(allMolecules).parallel().forEach(a -> {
+				if (!canceled.get()) {
+					var reactions = compiled.getAllReactions();
+					for (var r : compiled.getReactionsWithProduct(a))
+						reactions.clear(r);
+					knockoutClosures[a] = engine.get().computeClosure(compiled.getFoods(), reactions);
+					done.incrementAndGet();
+				}
+			}));
+			try {
+				while (true) {
+					try {
+						future.get(100, TimeUnit.MILLISECONDS);
+						break;
+					} catch (TimeoutException ignored) {
 					}
+					progress.setProgress(done.get());
+					progress.checkForCancel();
 				}
+			} catch (CanceledException | InterruptedException ex) {
+				canceled.set(true);
+				future.quietlyJoin();
+				throw new CanceledException();
+			} catch (ExecutionException ex) {
+				throw new RuntimeException(ex.getCause());
 			}
-			progress.incrementProgress();
+		} finally {
+			pool.shutdown();
 		}
-		return graph;
-	}
 
-	public static boolean isFoodGenerated(Collection<MoleculeType> food, Collection<Reaction> reactions, MoleculeType target, MoleculeType ignore) {
-		if (food.contains(target))
-			return true;
-		var availableFood = new HashSet<>(food);
-		var availableReactions = new ArrayList<>(reactions);
-		while (true) {
-			var generated = availableReactions.stream().filter(r -> !r.getProducts().contains(ignore)).filter(r -> r.isHasAllReactants(availableFood, r.getDirection())).collect(Collectors.toList());
-			if (generated.size() > 0) {
-				for (var r : generated) {
-					if (r.getProducts().contains(target))
-						return true;
-					availableFood.addAll(r.getProducts());
+		for (var b : allMolecules) {
+			for (var a : allMolecules) {
+				if (a != b && !knockoutClosures[a].get(b)) {
+					graph.newEdge(nodes[a], nodes[b]);
 				}
-				availableReactions.removeAll(generated);
-			} else
-				break;
+			}
 		}
-		return false;
+		progress.reportTaskCompleted();
+		return graph;
 	}
 
 	/**
@@ -128,7 +140,18 @@ public class ComputeMoleculeDependencies implements IDescribed {
 	 */
 	public static void run(MainWindow mainWindow) {
 		var service = new AService<Graph>(mainWindow.getStatusPane());
-		service.setCallable(() -> apply(service.getProgressListener(), mainWindow.getInputReactionSystem(), null));
+		service.setCallable(() -> {
+			var inputReactionSystem = mainWindow.getInputReactionSystem();
+			var key = ResultCache.computeKey(ResultCache.computeHash(inputReactionSystem), "Molecule dependencies", "");
+			var cache = (mainWindow.isUseResultCache() ? ResultCache.getInstance() : null);
+			var graph = (cache != null ? cache.getGraph(key, inputReactionSystem.getMoleculeTypePool()::valueOf) : null);
+			if (graph == null) {
+				graph = apply(service.getProgressListener(), inputReactionSystem, null);
+				if (cache != null)
+					cache.putGraph(key, graph);
+			}
+			return graph;
+		});
 		service.setOnScheduled(e -> mainWindow.getDocument().setReactionDependencyNetwork(null));
 		service.setOnFailed(e -> NotificationManager.showError(service.getException().getMessage()));
 		service.setOnCancelled(e -> NotificationManager.showWarning("User canceled compute molecule dependencies"));
@@ -19,8 +19,8 @@
 
 package catrenet.algorithm;
 
-import catrenet.model.MoleculeType;
-import catrenet.model.Reaction;
+import catrenet.model.CompiledReactionSystem;
+import catrenet.model.DisjunctiveNormalForm;
 import catrenet.model.ReactionSystem;
 import catrenet.window.MainWindow;
 import catrenet.window.MainWindowController;
@@ -28,13 +28,18 @@ import javafx.beans.value.ChangeListener;
 import javafx.beans.value.WeakChangeListener;
 import jloda.fx.util.AService;
 import jloda.util.CanceledException;
-import jloda.util.Single;
+import jloda.util.ProgramExecutorService;
 import jloda.util.StringUtils;
-import jloda.util.progress.ProgressSilent;
+import jloda.util.progress.ProgressListener;
 
-import java.util.Collection;
-import java.util.TreeSet;
-import java.util.stream.Collectors;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 /**
  * determines which reactions are necessarily spontaneous in a RAF
@@ -48,56 +53,200 @@ public class ComputeNecessarilySpontaneousInRAF implements IDescribed {
 
     public static void apply(MainWindow window, final ReactionSystem inputReactions, MainWindowController controller, ChangeListener<Boolean> runningListener) {
 
-		final AService<Collection<String>> service = new AService<>(controller.getBottomFlowPane());
+		final AService<Map<String, Map<String, Boolean>>> service = new AService<>(controller.getBottomFlowPane());
 
-        service.setCallable(() -> {
-            final ReactionSystem maxRAF = (new MaxRAFAlgorithm()).apply(inputReactions, service.getProgressListener());
-            return maxRAF.getReactions().parallelStream().filter(r -> computeMaxRAFsForModifiedReactions(maxRAF, r) < maxRAF.getReactions().size()).map(Reaction::getName).collect(Collectors.toCollection(TreeSet::new));
-        });
+        service.setCallable(() -> apply(new AnalysisContext(inputReactions), service.getProgressListener()));
 
         service.runningProperty().addListener(new WeakChangeListener<>(runningListener));
 
         service.setOnSucceeded(c -> {
-            final String output = String.format("Necessarily spontaneous reactions (%d): %s\n",
-                    service.getValue().size(), StringUtils.toString(service.getValue(), ", "));
-            controller.getLogTextArea().setText(controller.getLogTextArea().getText() + "\nMaxRAF: " + output);
+            final var necessarilySpontaneous = service.getValue().entrySet().stream().filter(e -> !e.getValue().isEmpty() && !e.getValue().containsValue(true)).map(Map.Entry::getKey).toList();
+            final var buf = new StringBuilder();
+            buf.append(String.format("Necessarily spontaneous reactions (%d): %s\n", necessarilySpontaneous.size(), StringUtils.toString(necessarilySpontaneous, ", ")));
+            buf.append("Catalyst conjunctions that can be present when the reaction first runs:\n");
+            for (var entry : service.getValue().entrySet()) {
+                if (!entry.getValue().isEmpty()) {
+                    buf.append("\t").append(entry.getKey()).append(": ");
+                    buf.append(StringUtils.toString(entry.getValue().entrySet().stream().map(e -> e.getKey() + (e.getValue() ? " yes" : " no")).toList(), ", ")).append("\n");
+                }
+            }
+            controller.getLogTextArea().setText(controller.getLogTextArea().getText() + "\nMaxRAF: " + buf);
             window.getController().getLogTab().getTabPane().getSelectionModel().select(window.getController().getLogTab());
         });
         service.start();
     }
 
-    private static int computeMaxRAFsForModifiedReactions(ReactionSystem maxRAF, Reaction r0) {
-
-        final Collection<MoleculeType> catalystConjunctions = r0.getCatalystConjunctions();
-
-        final Single<Integer> maxSize = new Single<>(0);
-        for (MoleculeType and : catalystConjunctions) {
-            final ReactionSystem input = new ReactionSystem();
-            input.getFoods().addAll(maxRAF.getFoods());
-            for (Reaction r : maxRAF.getReactions()) {
-                if (r != r0)
-                    input.getReactions().add(r);
-                else {
-                    if (r.getDirection() == Reaction.Direction.forward || r.getDirection() == Reaction.Direction.both) {
-                        final Reaction modified = new Reaction(r.getName() + (r.getDirection() == Reaction.Direction.both ? "/+" : ""), r);
-                        modified.setDirection(Reaction.Direction.forward);
-                        modified.getReactants().addAll(MoleculeType.valuesOf(StringUtils.split(and.getName(), '&')));
-                        input.getReactions().add(modified);
-                    }
-                    if (r.getDirection() == Reaction.Direction.reverse || r.getDirection() == Reaction.Direction.both) {
-                        final Reaction modified = new Reaction(r.getName() + (r.getDirection() == Reaction.Direction.both ? "/-" : ""), r);
-                        modified.setDirection(Reaction.Direction.reverse);
-                        modified.getProducts().addAll(MoleculeType.valuesOf(StringUtils.split(and.getName(), '&')));
-                        input.getReactions().add(modified);
-                    }
+    /**
+     * for each reaction of the max RAF and each of its catalyst conjunctions, determines whether the max RAF remains
+     * the same when the reaction also requires the molecules of the conjunction as reactants, that is, whether the
+     * conjunction can be present when the reaction first runs. A catalyzed reaction is necessarily spontaneous, if this
+     * holds for none of its conjunctions.
+     * <p>
+     * All variants are evaluated in parallel, each as a closure computation on the compiled max RAF in which only the
+     * requirements of the modified reaction are changed
+     *
+     * @return map from the names of the max RAF reactions to maps from the conjunctions to the result
+     */
+    public static Map<String, Map<String, Boolean>> apply(AnalysisContext context, ProgressListener progress) throws CanceledException {
+        final var compiled = context.getCompiledMaxRAF(progress);
+
+        final var variantReaction = IntStream.range(0, compiled.getNumberOfReactions()).flatMap(r -> IntStream.range(0, compiled.getCatalystConjunctions(r).length).map(i -> r)).toArray();
+        final var variantConjunction = IntStream.range(0, compiled.getNumberOfReactions()).flatMap(r -> IntStream.range(0, compiled.getCatalystConjunctions(r).length)).toArray();
+        final var sufficient = new boolean[variantReaction.length];
+
+        progress.setSubtask("Modified reactions");
+        progress.setMaximum(variantReaction.length);
+        progress.setProgress(0);
+
+        final var check = ThreadLocal.withInitial(() -> new VariantCheck(compiled));
+        final var done = new AtomicInteger();
+        final var canceled = new AtomicBoolean(false);
+
+        final var pool = new ForkJoinPool(ProgramExecutorService.getNumberOfCoresToUse());
+        try {
+            final var future = pool.submit(() -> IntStream.range(0, variantReaction.length).parallel().forEach(v -> {
+                if (!canceled.get()) {
+                    final var r = variantReaction[v];
+                    sufficient[v] = check.get().apply(r, compiled.getCatalystConjunctions(r)[variantConjunction[v]]);
+                    done.incrementAndGet();
                 }
-            }
+            }));
             try {
-                maxSize.set(Math.max(maxSize.get(), (int) (new MaxRAFAlgorithm()).apply(input, new ProgressSilent()).getReactionNames().stream().filter(n -> !n.endsWith("/-")).count()));
-            } catch (CanceledException ignored) {
+                while (true) {
+                    try {
+                        future.get(100, TimeUnit.MILLISECONDS);
+                        break;
+                    } catch (TimeoutException ignored) {
+                    }
+                    progress.setProgress(done.get());
+                    progress.checkForCancel();
+                }
+            } catch (CanceledException | InterruptedException ex) {
+                canceled.set(true);
+                future.quietlyJoin();
+                throw new CanceledException();
+            } catch (ExecutionException ex) {
+                throw new RuntimeException(ex.getCause());
             }
+        } finally {
+            pool.shutdown();
+        }
+
+        final var result = new TreeMap<String, Map<String, Boolean>>();
+        for (var r = 0; r < compiled.getNumberOfReactions(); r++) {
+            result.put(compiled.getReaction(r).getName(), new LinkedHashMap<>());
+        }
+        for (var v = 0; v < variantReaction.length; v++) {
+            final var reaction = compiled.getReaction(variantReaction[v]);
+            final var conjunction = DisjunctiveNormalForm.toName(reaction.getCatalystConjunctionElements()[variantConjunction[v]]);
+            result.get(reaction.getName()).put(conjunction, sufficient[v]);
         }
-        return maxSize.get();
+        return result;
     }
 
+    /**
+     * checks whether all reactions of a RAF remain in its max RAF, when one reaction also requires the molecules
+     * of one of its catalyst conjunctions as inputs. As the modified system is contained in the RAF, this is the case,
+     * if and only if all reactions can run and are catalyzed in the closure of the food set.
+     * If the modified reaction runs in both directions, then, as for the reaction system used before, only the forward
+     * direction is required to run.
+     * Keeps working arrays between calls, so use one instance per thread
+     */
+    private static class VariantCheck {
+        private final CompiledReactionSystem compiled;
+        private final int[] missing; // number of missing inputs, index 2r for forward direction of r, 2r+1 for reverse
+        private final BitSet molecules = new BitSet();
+        private final int[] moleculeStack;
+
+        VariantCheck(CompiledReactionSystem compiled) {
+            this.compiled = compiled;
+            missing = new int[2 * compiled.getNumberOfReactions()];
+            moleculeStack = new int[compiled.getNumberOfMolecules()];
+        }
+
+        /**
+         * @param r0          the modified reaction
+         * @param conjunction the molecules that it additionally requires
+         * @return true, if all reactions remain in the max RAF
+         */
+        boolean apply(int r0, int[] conjunction) {
+            molecules.clear();
+            molecules.or(compiled.getFoods());
+
+            for (var r = 0; r < compiled.getNumberOfReactions(); r++) {
+                missing[2 * r] = (compiled.isForward(r) ? countMissing(compiled.getReactants(r)) : -1);
+                missing[2 * r + 1] = (compiled.isReverse(r) ? countMissing(compiled.getProducts(r)) : -1);
+            }
+            final var forwardExtra = extra(conjunction, compiled.getReactants(r0));
+            final var reverseExtra = extra(conjunction, compiled.getProducts(r0));
+            if (compiled.isForward(r0))
+                missing[2 * r0] += countMissing(forwardExtra);
+            if (compiled.isReverse(r0))
+                missing[2 * r0 + 1] += countMissing(reverseExtra);
+
+            var top = 0;
+            for (var side = 0; side < missing.length; side++) {
+                if (missing[side] == 0)
+                    top = fire(side, top);
+            }
+            while (top > 0) {
+                final var m = moleculeStack[--top];
+                for (var r : compiled.getReactionsWithReactant(m)) {
+                    if (missing[2 * r] > 0 && --missing[2 * r] == 0)
+                        top = fire(2 * r, top);
+                }
+                for (var r : compiled.getReactionsWithProduct(m)) {
+                    if (missing[2 * r + 1] > 0 && --missing[2 * r + 1] == 0)
+                        top = fire(2 * r + 1, top);
+                }
+                if (Arrays.binarySearch(forwardExtra, m) >= 0 && missing[2 * r0] > 0 && --missing[2 * r0] == 0)
+                    top = fire(2 * r0, top);
+                if (Arrays.binarySearch(reverseExtra, m) >= 0 && missing[2 * r0 + 1] > 0 && --missing[2 * r0 + 1] == 0)
+                    top = fire(2 * r0 + 1, top);
+            }
+
+            for (var r = 0; r < compiled.getNumberOfReactions(); r++) {
+                final boolean runs;
+                if (r == r0 && compiled.isForward(r))
+                    runs = (missing[2 * r] == 0);
+                else
+                    runs = (missing[2 * r] == 0 || missing[2 * r + 1] == 0);
+                if (!runs || !compiled.isCatalyzed(r, molecules))
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * adds the outputs of a reaction side
+         *
+         * @return new top of molecule stack
+         */
+        private int fire(int side, int top) {
+            final var r = side / 2;
+            for (var m : (side % 2 == 0 ? compiled.getProducts(r) : compiled.getReactants(r))) {
+                if (!molecules.get(m)) {
+                    molecules.set(m);
+                    moleculeStack[top++] = m;
+                }
+            }
+            return top;
+        }
+
+        private int countMissing(int[] ids) {
+            var count = 0;
+            for (var m : ids) {
+                if (!molecules.get(m))
+                    count++;
+            }
+            return count;
+        }
+
+        /**
+         * gets the molecules of the conjunction that are not contained in the inputs, sorted
+         */
+        private static int[] extra(int[] conjunction, int[] inputs) {
+            return Arrays.stream(conjunction).filter(m -> Arrays.binarySearch(inputs, m) < 0).sorted().toArray();
+        }
+    }
 }
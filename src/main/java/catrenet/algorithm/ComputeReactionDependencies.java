@@ -19,7 +19,8 @@
 
 package catrenet.algorithm;
 
-import catrenet.model.MoleculeType;
+import catrenet.io.ResultCache;
+import catrenet.model.CompiledReactionSystem;
 import catrenet.model.Reaction;
 import catrenet.model.ReactionSystem;
 import catrenet.view.EdgeType;
@@ -28,14 +29,19 @@ import jloda.fx.util.AService;
 import jloda.fx.window.NotificationManager;
 import jloda.graph.Graph;
 import jloda.graph.Node;
-import jloda.util.Basic;
 import jloda.util.CanceledException;
-import jloda.util.ExecuteInParallel;
+import jloda.util.ProgramExecutorService;
 import jloda.util.StringUtils;
 import jloda.util.progress.ProgressListener;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 /**
  * computes the graph of dependencies between all food-set generated reactions
@@ -50,6 +56,13 @@ public class ComputeReactionDependencies implements IDescribed {
 	/**
 	 * computes the graph of strict reaction dependencies. There is an edge from p to r if p is required to produce
 	 * one of the reactants of r
+	 * <p>
+	 * Reactions are assigned to the levels on which they first fire when computing the closure of the food set. For a
+	 * reaction p on level i and a reaction r on a higher level k, p is required for r, if the reactants of r are not
+	 * generated by the reactions on levels i to k-1 other than p, starting from the molecules available before level i.
+	 * For each p, a single closure computation that adds the levels one at a time determines all r that require p.
+	 * These knockout closures are run in parallel. Then, for each r, an edge from p to r is added, if p is required for r
+	 * and is not an ancestor of a reaction on a higher level that already has an edge to r
 	 *
 	 * @param progress            progress
 	 * @param inputReactionSystem input reactions
@@ -57,46 +70,36 @@ public class ComputeReactionDependencies implements IDescribed {
 	 * @throws CanceledException
 	 */
 	public static Graph apply(ProgressListener progress, ReactionSystem inputReactionSystem, Graph graph0) throws CanceledException {
-		var allFood = inputReactionSystem.getFoods();
 		var allReactions = new ArrayList<Reaction>();
 		for (var r : inputReactionSystem.getReactions()) {
 			allReactions.addAll(r.allAsForward());
 		}
+		var compiled = new CompiledReactionSystem(inputReactionSystem.getFoods(), allReactions);
 
-		var levelReactionsMap = new TreeMap<Integer, Collection<Reaction>>();
-		var levelMoleculesMap = new TreeMap<Integer, Collection<MoleculeType>>();
-		levelMoleculesMap.put(-1, allFood);
+		progress.setTasks("Computing reaction dependencies", "Computing levels");
 
-		var levels = 0;
+		var levelReactions = new ArrayList<BitSet>(); // reactions that first fire on level i
+		var levelAvailable = new ArrayList<BitSet>(); // molecules available before level i
+		var available = compiled.getFoods();
+		levelAvailable.add((BitSet) available.clone());
+		new ClosureEngine(compiled).computeLevels(compiled.getFoods(), compiled.getAllReactions(), (level, reactions, molecules) -> {
+			levelReactions.add(reactions);
+			available.or(molecules);
+			levelAvailable.add((BitSet) available.clone());
+		});
+		var levels = levelReactions.size();
 
-		progress.setTasks("Computing reaction dependencies", "Computing levels");
-		var maxProgress = allReactions.size();
-		progress.setMaximum(maxProgress);
-		progress.setProgress(0);
+		System.err.println("Levels: " + levels);
 
-		var availableMolecules = new HashSet<>(allFood);
-		var availableReactions = new ArrayList<>(allReactions);
-		while (availableReactions.size() > 0) {
-			var additionalReactions = new HashSet<Reaction>();
-			var additionalMolecules = new HashSet<MoleculeType>();
-			for (var r : availableReactions) {
-				if (availableMolecules.containsAll(r.getReactants())) {
-					additionalReactions.add(r);
-					additionalMolecules.addAll(r.getProducts());
-				}
-			}
-			if (additionalReactions.size() == 0)
-				break;
-			availableMolecules.addAll(additionalMolecules);
-			levelReactionsMap.put(levels, additionalReactions);
-			additionalMolecules.addAll(levelMoleculesMap.get(levels - 1));
-			levelMoleculesMap.put(levels, additionalMolecules);
-			availableReactions.removeAll(additionalReactions);
-			levels++;
-			progress.setProgress(maxProgress - availableReactions.size());
+		var level = new int[compiled.getNumberOfReactions()];
+		Arrays.fill(level, -1);
+		for (var i = 0; i < levels; i++) {
+			var reactions = levelReactions.get(i);
+			for (var r = reactions.nextSetBit(0); r >= 0; r = reactions.nextSetBit(r + 1))
+				level[r] = i;
 		}
 
-		System.err.println("Levels: " + levels);
+		var required = computeRequired(compiled, levelReactions, levelAvailable, level, progress);
 
 		progress.setTasks("Computing reaction dependencies", "");
 		progress.setMaximum(levels);
@@ -105,76 +108,171 @@ public class ComputeReactionDependencies implements IDescribed {
 		var graph = (graph0 != null ? graph0 : new Graph());
 		graph.clear();
 
-		var nameNodeMap = new HashMap<String, Node>();
-		for (var r : allReactions) {
-			nameNodeMap.put(r.getName(), graph.newNode(r));
+		var nodes = new Node[compiled.getNumberOfReactions()];
+		for (var r = 0; r < nodes.length; r++) {
+			nodes[r] = graph.newNode(compiled.getReaction(r));
 		}
-		var one = MoleculeType.valueOf("!!!");
 
-		for (var k0 = 1; k0 < levels; k0++) {
-			var k = k0;
-			progress.setSubtask("%d of %d levels".formatted(k, levels - 1));
-
-			try {
-				ExecuteInParallel.apply(levelReactionsMap.get(k),
-						s -> {
-							var allReactionsBetween = new HashSet<Reaction>();
-							s.getProducts().add(one);
-							var ancestors = new HashSet<Node>();
-							for (var i = k - 1; i >= 0; i--) {
-								allReactionsBetween.addAll(levelReactionsMap.get(i));
-								for (var r : levelReactionsMap.get(i)) {
-									if (!ancestors.contains(nameNodeMap.get(r.getName()))) {
-										var r1 = new Reaction(r.getName(), r);
-										r1.getReactants().add(one);
-										var foodSet = levelMoleculesMap.get(i - 1);
-										if (!isFoodGenerated(foodSet, allReactionsBetween, r1, r, s)) {
-											var rNode = nameNodeMap.get(r.getName());
-											var sNode = nameNodeMap.get(s.getName());
-											synchronized (graph) {
-												graph.newEdge(rNode, sNode, EdgeType.Association);
-											}
-											collectAllAncestors(rNode, ancestors);
-										}
-										//r.getReactants().remove(one);
-									}
-								}
-								progress.checkForCancel();
-							}
-							s.getProducts().remove(one);
-						}, 15 /*ProgramExecutorService.getNumberOfCoresToUse()*/, progress);
-			} catch (Exception ignored) {
+		var ancestors = new BitSet[compiled.getNumberOfReactions()]; // each reaction and all its ancestors
+		for (var k = 0; k < levels; k++) {
+			var reactions = levelReactions.get(k);
+			for (var s = reactions.nextSetBit(0); s >= 0; s = reactions.nextSetBit(s + 1)) {
+				var sAncestors = new BitSet();
+				for (var i = k - 1; i >= 0; i--) {
+					var candidates = levelReactions.get(i);
+					for (var r = candidates.nextSetBit(0); r >= 0; r = candidates.nextSetBit(r + 1)) {
+						if (!sAncestors.get(r) && required[r].get(s)) {
+							graph.newEdge(nodes[r], nodes[s], EdgeType.Association);
+							sAncestors.or(ancestors[r]);
+						}
+					}
+				}
+				sAncestors.set(s);
+				ancestors[s] = sAncestors;
 			}
+			progress.setProgress(k + 1);
+		}
+		progress.reportTaskCompleted();
+		return graph;
+	}
 
+	/**
+	 * for each reaction p, determines all reactions on higher levels that require p, in parallel
+	 *
+	 * @return for each reaction, the reactions that require it
+	 */
+	private static BitSet[] computeRequired(CompiledReactionSystem compiled, List<BitSet> levelReactions, List<BitSet> levelAvailable, int[] level, ProgressListener progress) throws CanceledException {
+		var required = new BitSet[compiled.getNumberOfReactions()];
+		var ids = IntStream.range(0, required.length).filter(r -> level[r] != -1).toArray();
+
+		progress.setSubtask("Knockout closures");
+		progress.setMaximum(ids.length);
+		progress.setProgress(0);
+
+		var sweep = ThreadLocal.withInitial(() -> new KnockoutSweep(compiled, levelReactions, levelAvailable));
+		var done = new AtomicInteger();
+		var canceled = new AtomicBoolean(false);
+
+		var pool = new ForkJoinPool(ProgramExecutorService.getNumberOfCoresToUse());
+		try {
+			var future = pool.submit(() -> Arrays.stream(ids).parallel().forEach(r -> {
+				if (!canceled.get()) {
+					required[r] = sweep.get().apply(r, level[r]);
+					done.incrementAndGet();
+				}
+			}));
 			try {
-				progress.checkForCancel();
-			} catch (CanceledException ex) {
-				Basic.caught(ex);
-				throw ex;
+				while (true) {
+					try {
+						future.get(100, TimeUnit.MILLISECONDS);
+						break;
+					} catch (TimeoutException ignored) {
+					}
+					progress.setProgress(done.get());
+					progress.checkForCancel();
+				}
+			} catch (CanceledException | InterruptedException ex) {
+				canceled.set(true);
+				future.quietlyJoin();
+				throw new CanceledException();
+			} catch (ExecutionException ex) {
+				throw new RuntimeException(ex.getCause());
 			}
+		} finally {
+			pool.shutdown();
 		}
-		progress.reportTaskCompleted();
-		return graph;
+		for (var r = 0; r < required.length; r++) {
+			if (required[r] == null)
+				required[r] = new BitSet();
+		}
+		return required;
 	}
 
-	public static boolean isFoodGenerated(Collection<MoleculeType> food, Collection<Reaction> reactions, Reaction add, Reaction ignore, Reaction reaction) {
-		var availableFood = new HashSet<>(food);
-		var availableReactions = new ArrayList<>(reactions);
-		availableReactions.add(add);
-		availableReactions.add(reaction);
-		while (true) {
-			var generated = availableReactions.stream().filter(r -> r != ignore).filter(r -> r.isHasAllReactants(availableFood, r.getDirection())).collect(Collectors.toList());
-			if (generated.size() > 0) {
-				if (generated.contains(reaction))
-					return true;
-				for (var r : generated) {
-					availableFood.addAll(r.getProducts());
+	/**
+	 * computes the knockout closure of a reaction level by level, using a counter of missing reactants for each reaction.
+	 * Keeps working arrays between calls, so use one instance per thread
+	 */
+	private static class KnockoutSweep {
+		private final CompiledReactionSystem compiled;
+		private final List<BitSet> levelReactions;
+		private final List<BitSet> levelAvailable;
+
+		private final int[] missing;
+		private final BitSet allowed = new BitSet();
+		private final BitSet molecules = new BitSet();
+		private final int[] moleculeStack;
+
+		KnockoutSweep(CompiledReactionSystem compiled, List<BitSet> levelReactions, List<BitSet> levelAvailable) {
+			this.compiled = compiled;
+			this.levelReactions = levelReactions;
+			this.levelAvailable = levelAvailable;
+			missing = new int[compiled.getNumberOfReactions()];
+			moleculeStack = new int[compiled.getNumberOfMolecules()];
+		}
+
+		/**
+		 * determines all reactions on higher levels that require the knockout reaction
+		 *
+		 * @param knockout the reaction to knock out
+		 * @param level    its level
+		 * @return reactions that require the knockout reaction
+		 */
+		BitSet apply(int knockout, int level) {
+			var result = new BitSet();
+
+			molecules.clear();
+			molecules.or(levelAvailable.get(level));
+			allowed.clear();
+			for (var k = level; k < levelReactions.size(); k++) {
+				var reactions = levelReactions.get(k);
+				for (var r = reactions.nextSetBit(0); r >= 0; r = reactions.nextSetBit(r + 1)) {
+					missing[r] = 0;
+					for (var m : compiled.getReactants(r)) {
+						if (!molecules.get(m))
+							missing[r]++;
+					}
+				}
+			}
+
+			for (var k = level + 1; k < levelReactions.size(); k++) {
+				var top = 0;
+				var reactions = levelReactions.get(k - 1);
+				for (var r = reactions.nextSetBit(0); r >= 0; r = reactions.nextSetBit(r + 1)) {
+					if (r != knockout) {
+						allowed.set(r);
+						if (missing[r] == 0)
+							top = fire(r, top);
+					}
 				}
-				availableReactions.removeAll(generated);
-			} else
-				break;
+				while (top > 0) {
+					for (var r : compiled.getReactionsWithReactant(moleculeStack[--top])) {
+						if (--missing[r] == 0 && allowed.get(r))
+							top = fire(r, top);
+					}
+				}
+				reactions = levelReactions.get(k);
+				for (var r = reactions.nextSetBit(0); r >= 0; r = reactions.nextSetBit(r + 1)) {
+					if (missing[r] > 0)
+						result.set(r);
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * adds the products of a reaction
+		 *
+		 * @return new top of molecule stack
+		 */
+		private int fire(int r, int top) {
+			for (var m : compiled.getProducts(r)) {
+				if (!molecules.get(m)) {
+					molecules.set(m);
+					moleculeStack[top++] = m;
+				}
+			}
+			return top;
 		}
-		return false;
 	}
 
 	public static void collectAllAncestors(Node v, Set<Node> ancestors) {
@@ -189,72 +287,6 @@ public class ComputeReactionDependencies implements IDescribed {
 		}
 	}
 
-	/**
-	 * computes the graph of strict reaction dependencies. There is an edge from p to r if p is required to produce
-	 * one of the reactants of r
-	 *
-	 * @param progress            progress
-	 * @param inputReactionSystem input reactions
-	 * @return graph containing all reactions and
-	 * @throws CanceledException
-	 */
-	public static Graph applyOld(ProgressListener progress, ReactionSystem inputReactionSystem, Graph graph) throws CanceledException {
-		progress.setTasks("Computing reaction dependencies", "F-generated set");
-		var reactions = Utilities.computeFGenerated(inputReactionSystem.getFoods(), inputReactionSystem.getReactions());
-		var one = MoleculeType.valueOf("!!!");
-		if (graph == null)
-			graph = new Graph();
-		else
-			graph.clear();
-		var nameNodeMap = new HashMap<String, Node>();
-		for (var r : reactions) {
-			nameNodeMap.put(r.getName(), graph.newNode(r));
-		}
-		progress.setSubtask("all pairs");
-		progress.setMaximum(reactions.size());
-		progress.setProgress(0L);
-		for (int i = 0; i < reactions.size(); i++) {
-			var r0 = reactions.get(i);
-			for (int j = 0; j < reactions.size(); j++) {
-				if (j != i) {
-					var s0 = reactions.get(j);
-					var ok = true;
-					doubleLoop:
-					for (var r : r0.allAsForward()) {
-						reactions.set(i, r);
-						try {
-							r.getReactants().add(one);
-							for (var s : s0.allAsForward()) {
-								reactions.set(j, s);
-								try {
-									s.getProducts().add(one);
-									var generatedSize = Utilities.computeFGenerated(inputReactionSystem.getFoods(), reactions).size();
-									if (generatedSize == reactions.size()) {
-										ok = false;
-										break doubleLoop;
-									}
-								} finally {
-									reactions.set(j, s0);
-								}
-							}
-						} finally {
-							reactions.set(i, r0);
-						}
-					}
-
-					if (ok) {
-						var rNode = nameNodeMap.get(r0.getName());
-						var sNode = nameNodeMap.get(s0.getName());
-						graph.newEdge(rNode, sNode, EdgeType.Association);
-					}
-				}
-			}
-			progress.incrementProgress();
-		}
-		progress.reportTaskCompleted();
-		return graph;
-	}
-
 	/**
 	 * run the calculation in a separate thread and then post process the graph
 	 *
@@ -262,7 +294,22 @@ public class ComputeReactionDependencies implements IDescribed {
 	 */
 	public static void run(MainWindow mainWindow) {
 		var service = new AService<Graph>(mainWindow.getStatusPane());
-		service.setCallable(() -> apply(service.getProgressListener(), mainWindow.getInputReactionSystem(), null));
+		service.setCallable(() -> {
+			var inputReactionSystem = mainWindow.getInputReactionSystem();
+			var key = ResultCache.computeKey(ResultCache.computeHash(inputReactionSystem), "Reaction dependencies", "");
+			var nameReactionMap = new HashMap<String, Reaction>();
+			for (var r : inputReactionSystem.getReactions()) {
+				r.allAsForward().forEach(f -> nameReactionMap.put(f.getName(), f));
+			}
+			var cache = (mainWindow.isUseResultCache() ? ResultCache.getInstance() : null);
+			var graph = (cache != null ? cache.getGraph(key, nameReactionMap::get) : null);
+			if (graph == null) {
+				graph = apply(service.getProgressListener(), inputReactionSystem, null);
+				if (cache != null)
+					cache.putGraph(key, graph);
+			}
+			return graph;
+		});
 		service.setOnScheduled(e -> mainWindow.getDocument().setReactionDependencyNetwork(null));
 		service.setOnFailed(e -> NotificationManager.showError(service.getException().getMessage()));
 		service.setOnCancelled(e -> NotificationManager.showWarning("User canceled compute dependencies"));
@@ -19,13 +19,25 @@
 
 package catrenet.algorithm;
 
+import catrenet.model.CompiledReactionSystem;
 import catrenet.model.ReactionSystem;
 import jloda.util.CanceledException;
 import jloda.util.Pair;
+import jloda.util.ProgramExecutorService;
 import jloda.util.progress.ProgressListener;
 import jloda.util.progress.ProgressOverrideTaskName;
 import jloda.util.progress.ProgressSilent;
 
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
 /**
  * compute the core RAF
  * Daniel Huson, 5.2020
@@ -43,25 +55,128 @@ public class CoreRAFAlgorithm extends AlgorithmBase {
         return "computes the unique irreducible RAF, if it exists (Section 4.1 of [SXH20])";
     }
 
+    /**
+     * the output is determined by the input, so may be cached
+     */
+    @Override
+    public String getCacheParameters() {
+        return "";
+    }
+
     /**
      * compute the core RAF
      *
 	 */
     public ReactionSystem apply(ReactionSystem input, ProgressListener progress) throws CanceledException {
+        return apply(new AnalysisContext(input), progress);
+    }
+
+    /**
+     * compute the core RAF, using the compiled input and max RAF of the context
+     */
+    @Override
+    public ReactionSystem apply(AnalysisContext context, ProgressListener progress) throws CanceledException {
         progress = new ProgressOverrideTaskName(progress, "Compute core RAF");
 
-        final var maxRAF = new MaxRAFAlgorithm().apply(input, new ProgressSilent());
+        final var input = context.getInput();
+        final var compiled = context.getCompiled();
+        final var maxRAF = context.getMaxRAFReactions(new ProgressSilent());
 
-        final var importantReactions = new ReactionSystem();
+        final ReactionSystem importantReactions;
+        if (input.getReactions().stream().anyMatch(r -> !r.getInhibitions().isEmpty())) {
+            importantReactions = new ReactionSystem();
+            importantReactions.getReactions().addAll(Importance.computeReactionImportance(context, context.getMaxRAF(new ProgressSilent()), new MaxRAFAlgorithm(), progress)
+                    .stream().filter(p -> p.getSecond() == 100f).map(Pair::getFirst).toList());
+            importantReactions.getFoods().addAll(importantReactions.computeMentionedFoods(input.getFoods()));
+        } else {
+            final var pool = new ForkJoinPool(ProgramExecutorService.getNumberOfCoresToUse());
+            try {
+                importantReactions = compiled.toReactionSystem("Important", computeEssentialReactions(compiled, maxRAF, pool, progress));
+            } finally {
+                pool.shutdown();
+            }
+        }
         importantReactions.setName("Important");
-
-        importantReactions.getReactions().addAll(Importance.computeReactionImportance(input, maxRAF, new MaxRAFAlgorithm(), progress)
-                .stream().filter(p -> p.getSecond() == 100f).map(Pair::getFirst).toList());
-        importantReactions.getFoods().addAll(importantReactions.computeMentionedFoods(input.getFoods()));
         progress.setProgress(2);
 
         final var coreRAF = new MaxRAFAlgorithm().apply(importantReactions, progress);
         coreRAF.setName("Core RAF");
         return coreRAF;
     }
+
+    /**
+     * computes the reactions of the max RAF that are contained in every RAF, assuming that there are no inhibitions.
+     * A reaction is essential, if the max RAF without it is empty. Otherwise, the max RAF without it is a RAF that
+     * contains all essential reactions, so all reactions not contained in it are no longer candidates. The candidates are
+     * tested in parallel, each worker thread using its own copy of a decremental max RAF
+     *
+     * @param compiled the compiled reaction system
+     * @param maxRAF   the max RAF
+     * @return essential reactions
+     */
+    public static BitSet computeEssentialReactions(CompiledReactionSystem compiled, BitSet maxRAF, ForkJoinPool pool, ProgressListener progress) throws CanceledException {
+        final var engine = new DecrementalMaxRAF(compiled, compiled.getFoods(), maxRAF);
+        final var ids = maxRAF.stream().toArray();
+        final var eliminated = new AtomicIntegerArray(compiled.getNumberOfReactions()); // candidates are only ever eliminated, so no locking needed
+        final var threadEngine = ThreadLocal.withInitial(() -> new DecrementalMaxRAF(engine));
+        final var done = new AtomicInteger();
+        final var canceled = new AtomicBoolean(false);
+
+        progress.setMaximum(ids.length);
+        progress.setProgress(0);
+
+        final var future = pool.submit(() -> Arrays.stream(ids).parallel().forEach(r -> {
+            if (!canceled.get() && eliminated.get(r) == 0) {
+                final var copy = threadEngine.get();
+                final var toRemove = new BitSet();
+                toRemove.set(r);
+                copy.checkpoint();
+                try {
+                    copy.removeReactions(toRemove, new ProgressSilent());
+                    final var remaining = copy.getReactions();
+                    if (!remaining.isEmpty()) {
+                        for (var s : ids) {
+                            if (!remaining.get(s))
+                                eliminated.set(s, 1);
+                        }
+                    }
+                } catch (CanceledException ex) {
+                    canceled.set(true);
+                } finally {
+                    copy.rollback();
+                }
+            }
+            done.incrementAndGet();
+        }));
+
+        try {
+            while (true) {
+                try {
+                    future.get(100, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException ignored) {
+                }
+                progress.setProgress(done.get());
+                progress.checkForCancel();
+            }
+            progress.setProgress(done.get());
+        } catch (CanceledException ex) {
+            canceled.set(true);
+            throw ex;
+        } catch (InterruptedException ex) {
+            canceled.set(true);
+            throw new CanceledException();
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+        if (canceled.get())
+            throw new CanceledException();
+
+        final var essential = new BitSet();
+        for (var r : ids) {
+            if (eliminated.get(r) == 0)
+                essential.set(r);
+        }
+        return essential;
+    }
 }
@@ -0,0 +1,420 @@
+/*
+ *  DecrementalMaxRAF.java Copyright (C) 2025 Daniel H. Huson
+ *
+ *  (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package catrenet.algorithm;
+
+import catrenet.model.CompiledReactionSystem;
+import jloda.util.CanceledException;
+import jloda.util.progress.ProgressListener;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * computes the max RAF as a decremental fixed point: the closure of the food set is computed once, and when
+ * reactions are pruned, only the molecules and reactions that depend on them are updated (delete and rederive).
+ * <p>
+ * To avoid deleting large parts of the closure that are produced in cycles, each molecule has a level (food has level 0)
+ * and each active reaction side has the level one more than the maximum level of its inputs. A molecule is produced
+ * by at least one active side whose level equals the level of the molecule, and only when it loses all such founding
+ * sides is it deleted and then possibly rederived.
+ * <p>
+ * Closures only shrink as reactions are pruned, so a reaction that is inhibited in the final closure is already
+ * inhibited in the initial one. Hence inhibitions are only checked once, at the start.
+ * <p>
+ * For knockout experiments, all changes made after a call of {@link #checkpoint()} can be undone using
+ * {@link #rollback()}, at a cost proportional to the changes.
+ */
+public class DecrementalMaxRAF {
+	private final CompiledReactionSystem compiled;
+	private final BitSet food;
+	private final BitSet reactions;
+	private final BitSet molecules;
+
+	private final int[] missing; // number of missing inputs, index 2r for forward direction of r, 2r+1 for reverse
+	private final int[] support; // number of active reaction sides that produce a molecule
+	private final int[] level; // level of a molecule
+	private final int[] founding; // number of active reaction sides that produce a molecule and have the same level
+	private final int[] sideLevel; // level of an active side
+	private final int[] moleculeStack;
+	private final BitSet reactionsWithLostSide = new BitSet();
+
+	private boolean journaling = false;
+	private int[] journal = new int[0]; // triples of kind, index and previous value
+	private int journalSize = 0;
+	private static final int MISSING = 0, SUPPORT = 1, REACTION = 2, MOLECULE = 3, LEVEL = 4, FOUNDING = 5, SIDE_LEVEL = 6;
+
+	/**
+	 * sets up the closure of the food set with respect to the given reactions
+	 *
+	 * @param compiled  the compiled reaction system
+	 * @param food      food molecules
+	 * @param reactions reactions to consider
+	 */
+	public DecrementalMaxRAF(CompiledReactionSystem compiled, BitSet food, BitSet reactions) {
+		this.compiled = compiled;
+		this.food = (BitSet) food.clone();
+		this.reactions = (BitSet) reactions.clone();
+		this.molecules = (BitSet) food.clone();
+
+		missing = new int[2 * compiled.getNumberOfReactions()];
+		support = new int[compiled.getNumberOfMolecules()];
+		level = new int[compiled.getNumberOfMolecules()];
+		founding = new int[compiled.getNumberOfMolecules()];
+		sideLevel = new int[2 * compiled.getNumberOfReactions()];
+		moleculeStack = new int[compiled.getNumberOfMolecules()];
+
+		for (var r = reactions.nextSetBit(0); r >= 0; r = reactions.nextSetBit(r + 1)) {
+			for (var side = 2 * r; side <= 2 * r + 1; side++) {
+				if (hasSide(side))
+					missing[side] = countMissing(inputs(side));
+			}
+		}
+		var top = 0;
+		for (var r = reactions.nextSetBit(0); r >= 0; r = reactions.nextSetBit(r + 1)) {
+			for (var side = 2 * r; side <= 2 * r + 1; side++) {
+				if (hasSide(side) && missing[side] == 0)
+					top = activate(side, top);
+			}
+		}
+		propagateAdditions(top);
+	}
+
+	/**
+	 * copy constructor, for use in another thread
+	 */
+	public DecrementalMaxRAF(DecrementalMaxRAF that) {
+		compiled = that.compiled;
+		food = (BitSet) that.food.clone();
+		reactions = (BitSet) that.reactions.clone();
+		molecules = (BitSet) that.molecules.clone();
+		missing = that.missing.clone();
+		support = that.support.clone();
+		level = that.level.clone();
+		founding = that.founding.clone();
+		sideLevel = that.sideLevel.clone();
+		moleculeStack = new int[that.moleculeStack.length];
+	}
+
+	/**
+	 * prunes all reactions that are not supported by the closure or that are inhibited
+	 *
+	 * @return the max RAF reactions, do not modify
+	 */
+	public BitSet computeMaxRAF(ProgressListener progress) throws CanceledException {
+		var toRemove = new BitSet();
+		for (var r = reactions.nextSetBit(0); r >= 0; r = reactions.nextSetBit(r + 1)) {
+			if (!isActive(r) || !compiled.isCatalyzed(r, molecules) || compiled.isInhibited(r, molecules))
+				toRemove.set(r);
+		}
+		removeReactions(toRemove, progress);
+		return reactions;
+	}
+
+	/**
+	 * removes the given reactions and then prunes all reactions that lose their reactants or catalysts, until a fixed
+	 * point is reached. Inhibitions are not rechecked, as removing reactions never adds molecules
+	 *
+	 * @param toRemove reactions to remove
+	 */
+	public void removeReactions(BitSet toRemove, ProgressListener progress) throws CanceledException {
+		var pending = (BitSet) toRemove.clone();
+		pending.and(reactions);
+		prune(pending, new BitSet(), 0, progress);
+	}
+
+	/**
+	 * starts recording all changes, so that they can be undone by {@link #rollback()}
+	 */
+	public void checkpoint() {
+		journaling = true;
+		journalSize = 0;
+	}
+
+	/**
+	 * undoes all changes made since the last call of {@link #checkpoint()} and stops recording
+	 */
+	public void rollback() {
+		for (var i = journalSize - 3; i >= 0; i -= 3) {
+			final var index = journal[i + 1];
+			final var value = journal[i + 2];
+			switch (journal[i]) {
+				case MISSING -> missing[index] = value;
+				case SUPPORT -> support[index] = value;
+				case REACTION -> reactions.set(index);
+				case MOLECULE -> molecules.set(index, value == 1);
+				case LEVEL -> level[index] = value;
+				case FOUNDING -> founding[index] = value;
+				case SIDE_LEVEL -> sideLevel[index] = value;
+			}
+		}
+		journalSize = 0;
+		journaling = false;
+	}
+
+	/**
+	 * keeps all changes made since the last call of {@link #checkpoint()} and stops recording
+	 */
+	public void commit() {
+		journalSize = 0;
+		journaling = false;
+	}
+
+	/**
+	 * removes the pending reactions and the deleted molecules on the stack, and then all reactions that depend on them
+	 */
+	private void prune(BitSet pending, BitSet deleted, int top, ProgressListener progress) throws CanceledException {
+		while (!pending.isEmpty() || top > 0) {
+			progress.checkForCancel();
+
+			// delete: remove all molecules that have lost any of their derivations
+			for (var r = pending.nextSetBit(0); r >= 0; r = pending.nextSetBit(r + 1)) {
+				clearReaction(r);
+				for (var side = 2 * r; side <= 2 * r + 1; side++) {
+					if (hasSide(side) && missing[side] == 0)
+						top = deactivate(side, deleted, top);
+				}
+			}
+			while (top > 0) {
+				var m = moleculeStack[--top];
+				for (var r : compiled.getReactionsWithReactant(m)) {
+					if (reactions.get(r) && compiled.isForward(r) && incrementMissing(2 * r) == 1)
+						top = deactivate(2 * r, deleted, top);
+				}
+				for (var r : compiled.getReactionsWithProduct(m)) {
+					if (reactions.get(r) && compiled.isReverse(r) && incrementMissing(2 * r + 1) == 1)
+						top = deactivate(2 * r + 1, deleted, top);
+				}
+			}
+
+			// rederive: all remaining active sides have all their inputs, so restart from the molecules they still produce
+			for (var m = deleted.nextSetBit(0); m >= 0; m = deleted.nextSetBit(m + 1)) {
+				if (support[m] > 0 && !molecules.get(m)) {
+					setMolecule(m);
+					setFounding(m);
+					moleculeStack[top++] = m;
+				}
+			}
+			propagateAdditions(top);
+			top = 0;
+
+			pending = new BitSet();
+			for (var m = deleted.nextSetBit(0); m >= 0; m = deleted.nextSetBit(m + 1)) {
+				if (!molecules.get(m)) {
+					for (var r : compiled.getReactionsWithCatalyst(m)) {
+						if (reactions.get(r) && !compiled.isCatalyzed(r, molecules))
+							pending.set(r);
+					}
+				}
+			}
+			for (var r = reactionsWithLostSide.nextSetBit(0); r >= 0; r = reactionsWithLostSide.nextSetBit(r + 1)) {
+				if (reactions.get(r) && !isActive(r))
+					pending.set(r);
+			}
+			reactionsWithLostSide.clear();
+			deleted.clear();
+		}
+	}
+
+	/**
+	 * the current reactions
+	 *
+	 * @return reactions, do not modify
+	 */
+	public BitSet getReactions() {
+		return reactions;
+	}
+
+	/**
+	 * the closure of the food set with respect to the current reactions
+	 *
+	 * @return molecules, do not modify
+	 */
+	public BitSet getMolecules() {
+		return molecules;
+	}
+
+	/**
+	 * adds the outputs of a side whose inputs are all present
+	 */
+	private int activate(int side, int top) {
+		var value = 0;
+		for (var m : inputs(side))
+			value = Math.max(value, level[m]);
+		set(SIDE_LEVEL, sideLevel, side, value + 1);
+
+		for (var m : outputs(side)) {
+			changeSupport(m, 1);
+			if (!molecules.get(m)) {
+				setMolecule(m);
+				set(LEVEL, level, m, sideLevel[side]);
+				set(FOUNDING, founding, m, 1);
+				moleculeStack[top++] = m;
+			} else if (!food.get(m) && level[m] == sideLevel[side])
+				set(FOUNDING, founding, m, founding[m] + 1);
+		}
+		return top;
+	}
+
+	/**
+	 * removes the outputs of a side that has lost one of its inputs or whose reaction was removed, if the side was
+	 * their last founding side
+	 */
+	private int deactivate(int side, BitSet deleted, int top) {
+		reactionsWithLostSide.set(side >> 1);
+		for (var m : outputs(side)) {
+			changeSupport(m, -1);
+			if (molecules.get(m) && !food.get(m) && level[m] == sideLevel[side] && set(FOUNDING, founding, m, founding[m] - 1) == 0) {
+				clearMolecule(m);
+				deleted.set(m);
+				moleculeStack[top++] = m;
+			}
+		}
+		return top;
+	}
+
+	/**
+	 * processes the newly added molecules on the stack, activating all sides whose inputs become complete
+	 */
+	private void propagateAdditions(int top) {
+		while (top > 0) {
+			var m = moleculeStack[--top];
+			for (var r : compiled.getReactionsWithReactant(m)) {
+				if (reactions.get(r) && compiled.isForward(r) && decrementMissing(2 * r) == 0)
+					top = activate(2 * r, top);
+			}
+			for (var r : compiled.getReactionsWithProduct(m)) {
+				if (reactions.get(r) && compiled.isReverse(r) && decrementMissing(2 * r + 1) == 0)
+					top = activate(2 * r + 1, top);
+			}
+		}
+	}
+
+	private int incrementMissing(int side) {
+		if (journaling)
+			record(MISSING, side, missing[side]);
+		return ++missing[side];
+	}
+
+	private int decrementMissing(int side) {
+		if (journaling)
+			record(MISSING, side, missing[side]);
+		return --missing[side];
+	}
+
+	/**
+	 * sets the level of a molecule that is rederived to the lowest level of an active side that produces it, and
+	 * counts the founding sides
+	 */
+	private void setFounding(int m) {
+		var value = Integer.MAX_VALUE;
+		var count = 0;
+		for (var side : producingSides(m)) {
+			if (sideLevel[side] < value) {
+				value = sideLevel[side];
+				count = 1;
+			} else if (sideLevel[side] == value)
+				count++;
+		}
+		set(LEVEL, level, m, value);
+		set(FOUNDING, founding, m, count);
+	}
+
+	/**
+	 * the active sides that produce the given molecule
+	 */
+	private int[] producingSides(int m) {
+		final var withProduct = compiled.getReactionsWithProduct(m);
+		final var withReactant = compiled.getReactionsWithReactant(m);
+		final var sides = new int[withProduct.length + withReactant.length];
+		var count = 0;
+		for (var r : withProduct) {
+			if (reactions.get(r) && compiled.isForward(r) && missing[2 * r] == 0)
+				sides[count++] = 2 * r;
+		}
+		for (var r : withReactant) {
+			if (reactions.get(r) && compiled.isReverse(r) && missing[2 * r + 1] == 0)
+				sides[count++] = 2 * r + 1;
+		}
+		return Arrays.copyOf(sides, count);
+	}
+
+	private int set(int kind, int[] array, int index, int value) {
+		if (journaling)
+			record(kind, index, array[index]);
+		return array[index] = value;
+	}
+
+	private void changeSupport(int m, int delta) {
+		if (journaling)
+			record(SUPPORT, m, support[m]);
+		support[m] += delta;
+	}
+
+	private void setMolecule(int m) {
+		if (journaling)
+			record(MOLECULE, m, 0);
+		molecules.set(m);
+	}
+
+	private void clearMolecule(int m) {
+		if (journaling)
+			record(MOLECULE, m, 1);
+		molecules.clear(m);
+	}
+
+	private void clearReaction(int r) {
+		if (journaling)
+			record(REACTION, r, 1);
+		reactions.clear(r);
+	}
+
+	private void record(int kind, int index, int value) {
+		if (journalSize + 3 > journal.length)
+			journal = Arrays.copyOf(journal, Math.max(3 * 1024, 2 * journal.length));
+		journal[journalSize++] = kind;
+		journal[journalSize++] = index;
+		journal[journalSize++] = value;
+	}
+
+	private boolean isActive(int r) {
+		return (compiled.isForward(r) && missing[2 * r] == 0) || (compiled.isReverse(r) && missing[2 * r + 1] == 0);
+	}
+
+	private boolean hasSide(int side) {
+		return (side & 1) == 0 ? compiled.isForward(side >> 1) : compiled.isReverse(side >> 1);
+	}
+
+	private int[] inputs(int side) {
+		return (side & 1) == 0 ? compiled.getReactants(side >> 1) : compiled.getProducts(side >> 1);
+	}
+
+	private int[] outputs(int side) {
+		return (side & 1) == 0 ? compiled.getProducts(side >> 1) : compiled.getReactants(side >> 1);
+	}
+
+	private int countMissing(int[] ids) {
+		var count = 0;
+		for (var m : ids) {
+			if (!molecules.get(m))
+				count++;
+		}
+		return count;
+	}
+}
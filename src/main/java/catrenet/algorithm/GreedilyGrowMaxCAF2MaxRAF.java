@@ -19,7 +19,7 @@
 
 package catrenet.algorithm;
 
-import catrenet.model.Reaction;
+import catrenet.model.CompiledReactionSystem;
 import catrenet.model.ReactionSystem;
 import catrenet.window.MainWindow;
 import javafx.beans.value.ChangeListener;
@@ -27,12 +27,13 @@ import jloda.fx.util.AService;
 import jloda.fx.window.NotificationManager;
 import jloda.util.CanceledException;
 import jloda.util.Pair;
+import jloda.util.ProgramExecutorService;
 import jloda.util.StringUtils;
 import jloda.util.progress.ProgressListener;
 import jloda.util.progress.ProgressSilent;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * greedily grow maxCAF to maxRAF by making reactions spontaneous
@@ -55,51 +56,10 @@ public class GreedilyGrowMaxCAF2MaxRAF implements IDescribed {
         service.setCallable(() -> {
             final ProgressListener progress = service.getProgressListener();
             progress.setTasks("Grow maxCAF to maxRAF", "Initializing");
-            final ReactionSystem maxCAF = (new MaxCAFAlgorithm()).apply(inputReactionSystem, new ProgressSilent());
-            final ReactionSystem maxRAF = (new MaxRAFAlgorithm()).apply(inputReactionSystem, new ProgressSilent());
-
-            final Set<String> remainingReactions = maxRAF.getReactions().stream().map(Reaction::getName).filter(n -> !maxCAF.getReactionNames().contains(n)).collect(Collectors.toSet());
-
-            final ArrayList<String> augmentedReactions = new ArrayList<>();
-            final ReactionSystem augmentedSystem = maxRAF.shallowCopy();
-
-            int augmentedMaxCAFSize = maxCAF.size();
-
-            progress.setSubtask("greedy extension");
-            progress.setMaximum(remainingReactions.size());
-
-            while (augmentedMaxCAFSize < maxRAF.size()) {
-                final Optional<Pair<Reaction, Integer>> best = remainingReactions.parallelStream().map(name -> {
-                    final Reaction reaction = maxRAF.getReaction(name);
-                    final Reaction augmentedReaction = new Reaction(reaction);
-                    augmentedReaction.setCatalysts("");
-                    augmentedReaction.getInhibitions().clear();
-                    final ReactionSystem workingSystem = augmentedSystem.shallowCopy();
-                    workingSystem.replaceNamedReaction(name, augmentedReaction);
-                    try {
-                        progress.checkForCancel();
-                        final ReactionSystem workingMaxCAF = (new MaxCAFAlgorithm()).apply(workingSystem, new ProgressSilent());
-                        return new Pair<>(augmentedReaction, workingMaxCAF.size());
-                    } catch (CanceledException ignored) {
-                        return new Pair<>(augmentedReaction, 0);
-                    }
-                }).max(Comparator.comparingInt(Pair::getSecond));
-
-                progress.incrementProgress(); // yes, need to check for cancel exactly here
-
-                if (best.isPresent()) {
-                    final Reaction augmentedReaction = best.get().getFirst();
-                    augmentedMaxCAFSize = best.get().getSecond();
-                    augmentedSystem.replaceNamedReaction(augmentedReaction.getName(), augmentedReaction);
-                    augmentedReactions.add(augmentedReaction.getName());
-                    remainingReactions.remove(augmentedReaction.getName());
-                    progress.setSubtask(augmentedMaxCAFSize + " of " + maxRAF.size());
-                } else { // we have gotten stuck
-                    System.err.println("No valid greedy choice found");
-                    break;
-                }
-            }
-            return new Result(maxCAF.size(), maxRAF.size(), augmentedReactions);
+            final var context = new AnalysisContext(inputReactionSystem);
+            final ReactionSystem maxCAF = context.getMaxCAF(new ProgressSilent());
+            final ReactionSystem maxRAF = context.getMaxRAF(new ProgressSilent());
+            return new Result(maxCAF.size(), maxRAF.size(), computeSpontaneousReactions(context, progress));
         });
 
         service.runningProperty().addListener(runningListener);
@@ -127,6 +87,175 @@ public class GreedilyGrowMaxCAF2MaxRAF implements IDescribed {
 
     }
 
+    /**
+     * greedily determines reactions of the max RAF that must be made spontaneous so that the max CAF grows to the max RAF.
+     * In each step, the reaction whose spontaneity increases the max CAF the most is chosen. All candidates are scored in
+     * parallel, as the increase over the current max CAF
+     *
+     * @return names of the reactions that are made spontaneous, in order of choice
+     */
+    public static List<String> computeSpontaneousReactions(AnalysisContext context, ProgressListener progress) throws CanceledException {
+        final var maxCAF = context.getMaxCAF(new ProgressSilent());
+        final var compiled = context.getCompiledMaxRAF(new ProgressSilent());
+
+        final var maxCAFNames = maxCAF.getReactionNames();
+        final var remaining = new BitSet();
+        for (var r = 0; r < compiled.getNumberOfReactions(); r++) {
+            if (!maxCAFNames.contains(compiled.getReaction(r).getName()))
+                remaining.set(r);
+        }
+
+        final var augmentedReactions = new ArrayList<String>();
+        final var state = new IncrementalMaxCAF(compiled);
+
+        progress.setSubtask("greedy extension");
+        progress.setMaximum(remaining.cardinality());
+        progress.setProgress(0);
+
+        var pool = new ForkJoinPool(ProgramExecutorService.getNumberOfCoresToUse());
+        try {
+            while (state.size() < compiled.getNumberOfReactions()) {
+                final var copies = ThreadLocal.withInitial(state::copy);
+                final var best = pool.submit(() -> remaining.stream().parallel()
+                                .mapToObj(r -> new Pair<>(r, copies.get().computeSizeIfSpontaneous(r)))
+                                .max(Comparator.<Pair<Integer, Integer>>comparingInt(Pair::getSecond).thenComparing(Pair::getFirst, Comparator.reverseOrder())))
+                        .join();
+
+                progress.incrementProgress(); // yes, need to check for cancel exactly here
+
+                if (best.isPresent()) {
+                    final int r = best.get().getFirst();
+                    state.makeSpontaneous(r);
+                    augmentedReactions.add(compiled.getReaction(r).getName());
+                    remaining.clear(r);
+                    progress.setSubtask(state.size() + " of " + compiled.getNumberOfReactions());
+                } else { // we have gotten stuck
+                    System.err.println("No valid greedy choice found");
+                    break;
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return augmentedReactions;
+    }
+
+    /**
+     * the max CAF of a reaction system in which some reactions are spontaneous, that is, are neither catalyzed nor inhibited.
+     * Making a reaction spontaneous only extends the current closure, so it is maintained incrementally, and a candidate
+     * can be evaluated by applying it and then undoing all changes
+     */
+    private static class IncrementalMaxCAF {
+        private final CompiledReactionSystem compiled;
+        private final BitSet spontaneous;
+        private final BitSet molecules;
+        private final ReactionCounters counters;
+        private final BitSet active; // reactions of the max CAF
+        private final BitSet emitted; // reactions whose products have been added
+
+        private final BitSet touched = new BitSet();
+        private final ArrayList<Integer> addedMolecules = new ArrayList<>();
+        private final ArrayList<Integer> changedReactions = new ArrayList<>(); // r, if r was activated or deactivated, ~r, if r was emitted
+        private boolean undoable;
+
+        IncrementalMaxCAF(CompiledReactionSystem compiled) {
+            this(compiled, new BitSet(), compiled.getFoods(), new BitSet(), new BitSet());
+            for (var r = 0; r < compiled.getNumberOfReactions(); r++) {
+                touched.set(r);
+            }
+            propagate();
+        }
+
+        private IncrementalMaxCAF(CompiledReactionSystem compiled, BitSet spontaneous, BitSet molecules, BitSet active, BitSet emitted) {
+            this.compiled = compiled;
+            this.spontaneous = spontaneous;
+            this.molecules = molecules;
+            this.counters = new ReactionCounters(compiled, molecules);
+            this.active = active;
+            this.emitted = emitted;
+        }
+
+        IncrementalMaxCAF copy() {
+            return new IncrementalMaxCAF(compiled, (BitSet) spontaneous.clone(), (BitSet) molecules.clone(), (BitSet) active.clone(), (BitSet) emitted.clone());
+        }
+
+        int size() {
+            return active.cardinality();
+        }
+
+        void makeSpontaneous(int r) {
+            spontaneous.set(r);
+            touched.set(r);
+            propagate();
+        }
+
+        /**
+         * computes the size of the max CAF, if the given reaction is made spontaneous, without changing this object.
+         * This only touches the reactions that are affected by the change, so it is fast for reactions that lack reactants
+         */
+        int computeSizeIfSpontaneous(int r) {
+            undoable = true;
+            makeSpontaneous(r);
+            final var size = size();
+            for (var i = addedMolecules.size() - 1; i >= 0; i--) {
+                final int m = addedMolecules.get(i);
+                molecules.clear(m);
+                counters.remove(m, s -> {
+                });
+            }
+            for (int s : changedReactions) {
+                if (s >= 0)
+                    active.flip(s);
+                else
+                    emitted.clear(~s);
+            }
+            spontaneous.clear(r);
+            addedMolecules.clear();
+            changedReactions.clear();
+            undoable = false;
+            return size;
+        }
+
+        private boolean isActive(int r) {
+            return counters.isHasAllReactants(r) && (spontaneous.get(r) || (counters.isCatalyzed(r) && !counters.isInhibited(r)));
+        }
+
+        /**
+         * updates the touched reactions and adds the products of newly active reactions, until nothing changes
+         */
+        private void propagate() {
+            while (!touched.isEmpty()) {
+                final var r = touched.nextSetBit(0);
+                touched.clear(r);
+                if (isActive(r) != active.get(r)) {
+                    active.flip(r);
+                    if (undoable)
+                        changedReactions.add(r);
+                }
+                if (active.get(r) && !emitted.get(r)) {
+                    emitted.set(r);
+                    if (undoable)
+                        changedReactions.add(~r);
+                    if (compiled.isForward(r))
+                        addAll(compiled.getProducts(r));
+                    if (compiled.isReverse(r))
+                        addAll(compiled.getReactants(r));
+                }
+            }
+        }
+
+        private void addAll(int[] ids) {
+            for (var m : ids) {
+                if (!molecules.get(m)) {
+                    molecules.set(m);
+                    if (undoable)
+                        addedMolecules.add(m);
+                    counters.add(m, touched::set);
+                }
+            }
+        }
+    }
+
 	private static class Result {
 		private final int maxCAFSize;
 		private final int maxRAFSize;
@@ -0,0 +1,46 @@
+/*
+ *  IRandomizedAlgorithm.java Copyright (C) 2025 Daniel H. Huson
+ *
+ *  (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package catrenet.algorithm;
+
+import catrenet.model.CompiledReactionSystem;
+
+import java.util.BitSet;
+
+/**
+ * an algorithm whose output depends on random choices, such as the order in which reactions are considered.
+ * Runs with the same seed produce the same output, see {@link ReplicateRuns}
+ */
+public interface IRandomizedAlgorithm {
+	/**
+	 * get the name of the reaction system computed by this algorithm
+	 *
+	 * @return name
+	 */
+	String getName();
+
+	/**
+	 * run the algorithm using the given seed. Must be thread safe
+	 *
+	 * @param input the compiled input
+	 * @param seed  the seed for all random choices
+	 * @return ids of the output reactions
+	 */
+	BitSet apply(CompiledReactionSystem input, long seed);
+}
@@ -19,17 +19,25 @@
 
 package catrenet.algorithm;
 
+import catrenet.model.CompiledReactionSystem;
 import catrenet.model.MoleculeType;
 import catrenet.model.Reaction;
 import catrenet.model.ReactionSystem;
 import jloda.util.Basic;
 import jloda.util.CanceledException;
 import jloda.util.Pair;
+import jloda.util.ProgramExecutorService;
 import jloda.util.StringUtils;
 import jloda.util.progress.ProgressListener;
 import jloda.util.progress.ProgressSilent;
 
-import java.util.ArrayList;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 /**
  * computes importance of food items and reactions
@@ -46,25 +54,48 @@ public class Importance implements IDescribed {
      * @return list of food, importance pairs, in order of decreasing importance (percent difference between model size and model size without given food item)
      */
     public static ArrayList<Pair<MoleculeType, Float>> computeFoodImportance(ReactionSystem inputSystem, ReactionSystem originalResult, AlgorithmBase algorithm, ProgressListener progress) throws CanceledException {
+        return computeFoodImportance(new AnalysisContext(inputSystem), originalResult, algorithm, progress);
+    }
+
+    /**
+     * computes food importance for the input of the context
+     *
+     * @return list of food, importance pairs, in order of decreasing importance (percent difference between model size and model size without given food item)
+     */
+    public static ArrayList<Pair<MoleculeType, Float>> computeFoodImportance(AnalysisContext context, ReactionSystem originalResult, AlgorithmBase algorithm, ProgressListener progress) throws CanceledException {
+        final var pool = new ForkJoinPool(ProgramExecutorService.getNumberOfCoresToUse());
+        try {
+            return computeFoodImportance(context, originalResult, algorithm, pool, progress);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * computes food importance, running the knockouts on the given pool
+     *
+     * @return list of food, importance pairs, in order of decreasing importance (percent difference between model size and model size without given food item)
+     */
+    public static ArrayList<Pair<MoleculeType, Float>> computeFoodImportance(AnalysisContext context, ReactionSystem originalResult, AlgorithmBase algorithm, ForkJoinPool pool, ProgressListener progress) throws CanceledException {
+        final var inputSystem = context.getInput();
         final var result = new ArrayList<Pair<MoleculeType, Float>>();
 
         progress.setTasks(StringUtils.fromCamelCase(Basic.getShortName(algorithm.getClass())), "importance");
-        progress.setMaximum(inputSystem.getFoods().size());
         try {
             progress.setMaximum(10000000);
             progress.setProgress(0);
-            final var increment = 5000000 / inputSystem.getFoods().size();
+            final var increment = 5000000 / Math.max(1, inputSystem.getFoods().size());
 
-            for (var food : inputSystem.getFoods()) {
-                final var replicateInput = inputSystem.shallowCopy();
-                replicateInput.setName("Food importance");
-                replicateInput.getFoods().remove(food);
-                final var replicateOutput = algorithm.apply(replicateInput, new ProgressSilent());
+            final int[] sizes;
+            if (algorithm.getClass() == MaxRAFAlgorithm.class)
+                sizes = computeMaxRAFFoodKnockoutSizes(context, pool, progress);
+            else
+                sizes = computeKnockoutSizes(inputSystem, "Food importance", ReactionSystem::getFoods, algorithm, pool, progress, increment);
 
-                final var importance = 100f * (originalResult.size() - replicateOutput.size()) / (float) originalResult.size();
+            for (var i = 0; i < sizes.length; i++) {
+                final var importance = 100f * (originalResult.size() - sizes[i]) / (float) originalResult.size();
                 if (importance > 0)
-                    result.add(new Pair<>(food, importance));
-                progress.setProgress(progress.getProgress() + increment);
+                    result.add(new Pair<>(inputSystem.getFoods().get(i), importance));
             }
             result.sort((a, b) -> -Float.compare(a.getSecond(), b.getSecond()));
         } catch (CanceledException ignored) {
@@ -79,6 +110,30 @@ public class Importance implements IDescribed {
      * @return list of reaction, importance pairs, in order of decreasing importance (difference between model size and model size without given reaction)
      */
     public static ArrayList<Pair<Reaction, Float>> computeReactionImportance(ReactionSystem inputSystem, ReactionSystem originalResult, AlgorithmBase algorithm, ProgressListener progress) throws CanceledException {
+        return computeReactionImportance(new AnalysisContext(inputSystem), originalResult, algorithm, progress);
+    }
+
+    /**
+     * computes reaction importance for the input of the context
+     *
+     * @return list of reaction, importance pairs, in order of decreasing importance (difference between model size and model size without given reaction)
+     */
+    public static ArrayList<Pair<Reaction, Float>> computeReactionImportance(AnalysisContext context, ReactionSystem originalResult, AlgorithmBase algorithm, ProgressListener progress) throws CanceledException {
+        final var pool = new ForkJoinPool(ProgramExecutorService.getNumberOfCoresToUse());
+        try {
+            return computeReactionImportance(context, originalResult, algorithm, pool, progress);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * computes reaction importance, running the knockouts on the given pool
+     *
+     * @return list of reaction, importance pairs, in order of decreasing importance (difference between model size and model size without given reaction)
+     */
+    public static ArrayList<Pair<Reaction, Float>> computeReactionImportance(AnalysisContext context, ReactionSystem originalResult, AlgorithmBase algorithm, ForkJoinPool pool, ProgressListener progress) throws CanceledException {
+        final var inputSystem = context.getInput();
         final var result = new ArrayList<Pair<Reaction, Float>>();
 
         if (originalResult.size() == 1) {
@@ -86,26 +141,26 @@ public class Importance implements IDescribed {
         } else if (originalResult.size() > 1) {
             try {
                 progress.setTasks(StringUtils.fromCamelCase(Basic.getShortName(algorithm.getClass())), "importance");
-                progress.setMaximum(inputSystem.getFoods().size());
                 progress.setMaximum(10000000);
                 progress.setProgress(5000000);
-                final var increment = 5000000 / inputSystem.getReactions().size();
+                final var increment = 5000000 / Math.max(1, inputSystem.getReactions().size());
 
                 final var sizeToCompareAgainst = originalResult.size() - 1;
 
-                for (var reaction : inputSystem.getReactions()) {
-                    final var replicateInput = inputSystem.shallowCopy();
-                    replicateInput.setName("Reaction importance");
-                    replicateInput.getReactions().remove(reaction);
-                    final var replicateOutput = algorithm.apply(replicateInput, new ProgressSilent());
-                    if (replicateOutput.size() < sizeToCompareAgainst) {
-                        final var importance = 100f * (sizeToCompareAgainst - replicateOutput.size()) / sizeToCompareAgainst;
+                final int[] sizes;
+                if (algorithm.getClass() == MaxRAFAlgorithm.class)
+                    sizes = computeMaxRAFReactionKnockoutSizes(context, pool, progress);
+                else
+                    sizes = computeKnockoutSizes(inputSystem, "Reaction importance", ReactionSystem::getReactions, algorithm, pool, progress, increment);
+
+                for (var i = 0; i < sizes.length; i++) {
+                    if (sizes[i] < sizeToCompareAgainst) {
+                        final var importance = 100f * (sizeToCompareAgainst - sizes[i]) / sizeToCompareAgainst;
                         if (importance > 0)
-                            result.add(new Pair<>(reaction, importance));
+                            result.add(new Pair<>(inputSystem.getReactions().get(i), importance));
                     }
-                    result.sort((a, b) -> -Float.compare(a.getSecond(), b.getSecond()));
-                    progress.setProgress(progress.getProgress() + increment);
                 }
+                result.sort((a, b) -> -Float.compare(a.getSecond(), b.getSecond()));
             } catch (CanceledException ignored) {
                 result.clear();
             }
@@ -113,6 +168,163 @@ public class Importance implements IDescribed {
         return result;
     }
 
+    /**
+     * computes the max RAF size of the input system without each of its food items. Evaluates the knockouts in
+     * batches of 64, using {@link BitSlicedMaxRAF}
+     *
+     * @return size of the max RAF for each food knockout
+     */
+    private static int[] computeMaxRAFFoodKnockoutSizes(AnalysisContext context, ForkJoinPool pool, ProgressListener progress) throws CanceledException {
+        final var compiled = context.getCompiled();
+        final var foods = compiled.getFoods();
+        final var maxRAF = context.getMaxRAFReactions(progress);
+        final var inputSystem = context.getInput();
+        final var reactions = getReactionsToKnockOutFrom(compiled, maxRAF);
+
+        // food items that are listed more than once are still present after removing one copy
+        final var counts = new HashMap<MoleculeType, Integer>();
+        inputSystem.getFoods().forEach(f -> counts.merge(f, 1, Integer::sum));
+        final var candidates = IntStream.range(0, inputSystem.getFoods().size()).filter(i -> counts.get(inputSystem.getFoods().get(i)) == 1).toArray();
+        final var candidateIds = Arrays.stream(candidates).map(i -> compiled.getMoleculeId(inputSystem.getFoods().get(i))).toArray();
+
+        final var candidateSizes = computeKnockoutSizes(candidates.length, BitSlicedMaxRAF.BATCH_SIZE, () -> {
+            final var engine = new BitSlicedMaxRAF(compiled);
+            return (from, to, sizes) -> System.arraycopy(engine.computeFoodKnockoutSizes(foods, reactions, Arrays.copyOfRange(candidateIds, from, to), new ProgressSilent()), 0, sizes, from, to - from);
+        }, pool, progress, 5000000 / Math.max(1, candidates.length));
+
+        final var sizes = new int[inputSystem.getFoods().size()];
+        Arrays.fill(sizes, maxRAF.cardinality());
+        for (var c = 0; c < candidates.length; c++)
+            sizes[candidates[c]] = candidateSizes[c];
+        return sizes;
+    }
+
+    /**
+     * computes the max RAF size of the input system without each of its reactions. Evaluates the knockouts in
+     * batches of 64, using {@link BitSlicedMaxRAF}
+     *
+     * @return size of the max RAF for each reaction knockout
+     */
+    private static int[] computeMaxRAFReactionKnockoutSizes(AnalysisContext context, ForkJoinPool pool, ProgressListener progress) throws CanceledException {
+        final var compiled = context.getCompiled();
+        final var foods = compiled.getFoods();
+        final var maxRAF = context.getMaxRAFReactions(progress);
+        final var reactions = getReactionsToKnockOutFrom(compiled, maxRAF);
+
+        // removing a reaction that is not considered does not change the max RAF
+        final var candidates = reactions.stream().toArray();
+
+        final var candidateSizes = computeKnockoutSizes(candidates.length, BitSlicedMaxRAF.BATCH_SIZE, () -> {
+            final var engine = new BitSlicedMaxRAF(compiled);
+            return (from, to, sizes) -> System.arraycopy(engine.computeReactionKnockoutSizes(foods, reactions, Arrays.copyOfRange(candidates, from, to), new ProgressSilent()), 0, sizes, from, to - from);
+        }, pool, progress, 5000000 / Math.max(1, candidates.length));
+
+        final var sizes = new int[compiled.getNumberOfReactions()];
+        Arrays.fill(sizes, maxRAF.cardinality());
+        for (var c = 0; c < candidates.length; c++)
+            sizes[candidates[c]] = candidateSizes[c];
+        return sizes;
+    }
+
+    /**
+     * if there are no inhibitions, then the max RAF of the input system without a given reaction or food item is the
+     * max RAF of the max RAF without that reaction or food item, so knockouts need only consider the max RAF.
+     * Otherwise, all reactions must be considered
+     */
+    private static BitSet getReactionsToKnockOutFrom(CompiledReactionSystem compiled, BitSet maxRAF) {
+        for (var r = 0; r < compiled.getNumberOfReactions(); r++) {
+            if (compiled.getInhibitions(r).length > 0)
+                return compiled.getAllReactions();
+        }
+        return maxRAF;
+    }
+
+    /**
+     * for each item of the given list of the input system, runs the algorithm on the input system without that item.
+     * Each worker thread uses its own copy of the input system, from which it temporarily removes the item
+     *
+     * @param items     the list of items (food or reactions) of a reaction system
+     * @param increment progress increment per knockout
+     * @return size of the result of each knockout
+     */
+    private static <T> int[] computeKnockoutSizes(ReactionSystem inputSystem, String name, Function<ReactionSystem, List<T>> items, AlgorithmBase algorithm,
+                                                  ForkJoinPool pool, ProgressListener progress, long increment) throws CanceledException {
+        return computeKnockoutSizes(items.apply(inputSystem).size(), 1, () -> {
+            final var workingCopy = inputSystem.shallowCopy();
+            workingCopy.setName(name);
+            return (from, to, sizes) -> {
+                final var list = items.apply(workingCopy);
+                final var item = list.remove(from);
+                try {
+                    sizes[from] = algorithm.apply(workingCopy, new ProgressSilent()).size();
+                } finally {
+                    list.add(from, item);
+                }
+            };
+        }, pool, progress, increment);
+    }
+
+    /**
+     * computes the sizes of the results of a range of knockouts, may modify thread-local state, but must restore it
+     */
+    private interface Knockouts {
+        void apply(int from, int to, int[] sizes) throws CanceledException;
+    }
+
+    /**
+     * computes the size of the result of each of the given number of knockouts in parallel, in batches of the given size
+     *
+     * @param knockouts number of knockouts
+     * @param batchSize number of knockouts per task
+     * @param factory   creates the knockouts function for a worker thread
+     * @param increment progress increment per knockout
+     * @return size of the result of each knockout
+     */
+    private static int[] computeKnockoutSizes(int knockouts, int batchSize, Supplier<Knockouts> factory, ForkJoinPool pool, ProgressListener progress, long increment) throws CanceledException {
+        final var sizes = new int[knockouts];
+        final var threadKnockouts = ThreadLocal.withInitial(factory);
+        final var done = new AtomicInteger();
+        final var canceled = new AtomicBoolean(false);
+
+        final var future = pool.submit(() -> IntStream.range(0, (knockouts + batchSize - 1) / batchSize).parallel().forEach(b -> {
+            if (!canceled.get()) {
+                final var from = b * batchSize;
+                final var to = Math.min(knockouts, from + batchSize);
+                try {
+                    threadKnockouts.get().apply(from, to, sizes);
+                } catch (CanceledException ex) {
+                    canceled.set(true);
+                }
+                done.addAndGet(to - from);
+            }
+        }));
+
+        final var startProgress = progress.getProgress();
+        try {
+            while (true) {
+                try {
+                    future.get(100, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException ignored) {
+                }
+                progress.setProgress(startProgress + done.get() * increment);
+                progress.checkForCancel();
+            }
+            progress.setProgress(startProgress + done.get() * increment);
+        } catch (CanceledException ex) {
+            canceled.set(true);
+            throw ex;
+        } catch (InterruptedException ex) {
+            canceled.set(true);
+            throw new CanceledException();
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+        if (canceled.get())
+            throw new CanceledException();
+        return sizes;
+    }
+
     /**
      * pretty print food importance
      *
@@ -19,15 +19,12 @@
 
 package catrenet.algorithm;
 
-import catrenet.model.MoleculeType;
-import catrenet.model.Reaction;
+import catrenet.model.CompiledReactionSystem;
 import catrenet.model.ReactionSystem;
 import jloda.util.CanceledException;
 import jloda.util.progress.ProgressListener;
 
-import java.util.ArrayList;
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.BitSet;
 
 /**
  * computes a maximal "constructively autocatalytic F-generated reaction network" (CAF)
@@ -47,40 +44,95 @@ public class MaxCAFAlgorithm extends AlgorithmBase {
         return " computes the maximal CAF [HMS15]";
     }
 
+    /**
+     * the output is determined by the input, so may be cached
+     */
+    @Override
+    public String getCacheParameters() {
+        return "";
+    }
+
     /**
      * computes a CAF
      *
      * @return result
      */
     public ReactionSystem apply(ReactionSystem input, ProgressListener progress) throws CanceledException {
-        final ReactionSystem result = new ReactionSystem();
-        result.setName(Name);
-
-        final Set<Reaction> inputReactions = new TreeSet<>(input.getReactions());
-        final Set<MoleculeType> inputFood = new TreeSet<>(input.getFoods());
+        return apply(new CompiledReactionSystem(input), progress);
+    }
 
-        final ArrayList<Set<Reaction>> reactions = new ArrayList<>();
-        final ArrayList<Set<MoleculeType>> molecules = new ArrayList<>();
+    /**
+     * computes a CAF on a compiled reaction system. Proceeds in rounds: in each round, the products of all reactions
+     * that are catalyzed, uninhibited and have all their reactants are added, until the number of such reactions no
+     * longer grows. Only reactions that mention a newly added molecule are reconsidered in each round
+     *
+     * @return result
+     */
+    @Override
+    public ReactionSystem apply(CompiledReactionSystem input, ProgressListener progress) throws CanceledException {
+        final var molecules = input.getFoods();
+        final var counters = new ReactionCounters(input, molecules);
 
-        molecules.add(0, inputFood);
-        reactions.add(0, Utilities.filterReactions(inputFood, inputReactions));
+        final var reactions = new BitSet();
+        for (var r = 0; r < input.getNumberOfReactions(); r++) {
+            if (counters.isCatalyzedAndUninhibitedAndHasAllReactants(r))
+                reactions.set(r);
+        }
+        var count = reactions.cardinality();
+        var toEmit = (BitSet) reactions.clone(); // reactions whose products have not yet been added
+        final var emitted = new BitSet();
 
         progress.setMaximum(100);
         progress.setProgress(0);
 
-        int i = 0;
-        do {
-            i++;
-            molecules.add(i, Utilities.addAllMentionedProducts(molecules.get(i - 1), reactions.get(i - 1)));
-            reactions.add(i, Utilities.filterReactions(molecules.get(i), inputReactions));
-            progress.setProgress(Math.min(100, reactions.size()));
-        } while (reactions.get(i).size() > reactions.get(i - 1).size());
+        var rounds = 0;
+        while (true) {
+            final var touched = new BitSet();
+            for (var r = toEmit.nextSetBit(0); r >= 0; r = toEmit.nextSetBit(r + 1)) {
+                emitted.set(r);
+                if (input.isForward(r))
+                    addAll(input.getProducts(r), molecules, counters, touched);
+                if (input.isReverse(r))
+                    addAll(input.getReactants(r), molecules, counters, touched);
+            }
+            toEmit = new BitSet();
 
-        if (reactions.get(i).size() > 0) {
-            result.getReactions().setAll(reactions.get(i));
-            result.getFoods().setAll(result.computeMentionedFoods(input.getFoods()));
+            final var previousCount = count;
+            for (var r = touched.nextSetBit(0); r >= 0; r = touched.nextSetBit(r + 1)) {
+                final var active = counters.isCatalyzedAndUninhibitedAndHasAllReactants(r);
+                if (active && !reactions.get(r)) {
+                    reactions.set(r);
+                    count++;
+                    if (!emitted.get(r))
+                        toEmit.set(r);
+                } else if (!active && reactions.get(r)) {
+                    reactions.clear(r);
+                    count--;
+                }
+            }
+            progress.setProgress(Math.min(100, ++rounds));
+            if (count <= previousCount)
+                break;
         }
+        return input.toReactionSystem(Name, reactions);
+    }
 
-        return result;
+    /**
+     * gets the max CAF of the input of the context, computing it only once for all algorithms that use the context
+     *
+     * @return result
+     */
+    @Override
+    public ReactionSystem apply(AnalysisContext context, ProgressListener progress) throws CanceledException {
+        return context.getMaxCAF(progress).shallowCopy();
+    }
+
+    private static void addAll(int[] ids, BitSet molecules, ReactionCounters counters, BitSet touched) {
+        for (var m : ids) {
+            if (!molecules.get(m)) {
+                molecules.set(m);
+                counters.add(m, touched::set);
+            }
+        }
     }
 }
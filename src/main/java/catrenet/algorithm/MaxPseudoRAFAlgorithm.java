@@ -19,15 +19,12 @@
 
 package catrenet.algorithm;
 
-import catrenet.model.MoleculeType;
-import catrenet.model.Reaction;
+import catrenet.model.CompiledReactionSystem;
 import catrenet.model.ReactionSystem;
 import jloda.util.CanceledException;
 import jloda.util.progress.ProgressListener;
 
-import java.util.ArrayList;
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.BitSet;
 
 /**
  * computes a maximal pseudo-RAF
@@ -47,44 +44,98 @@ public class MaxPseudoRAFAlgorithm extends AlgorithmBase {
         return "computes the maximal Pseudo RAF [HMS15]";
     }
 
+    /**
+     * the output is determined by the input, so may be cached
+     */
+    @Override
+    public String getCacheParameters() {
+        return "";
+    }
+
     /**
      * computes a pseudo-RAF
      *
      * @return result
      */
     public ReactionSystem apply(ReactionSystem input, ProgressListener progress) throws CanceledException {
-        final ReactionSystem result = new ReactionSystem();
-        result.setName(Name);
-
-        final Set<Reaction> inputReactions = new TreeSet<>(input.getReactions());
-        if (inputReactions.size() > 0) {
-            final Set<MoleculeType> inputFood = new TreeSet<>(input.getFoods());
+        return apply(new CompiledReactionSystem(input), progress);
+    }
 
-            final ArrayList<Set<Reaction>> reactions = new ArrayList<>();
-            final ArrayList<Set<MoleculeType>> molecules = new ArrayList<>();
+    /**
+     * computes a pseudo-RAF on a compiled reaction system. Starts with all reactions and the molecules that they or the
+     * food set provide, and removes reactions that are not catalyzed, are inhibited or lack reactants. When the last
+     * reaction that provides a molecule is removed, the molecule is removed, too, and all reactions that depend on it are
+     * reconsidered. As the set of molecules only shrinks, inhibitions only need to be checked at the start
+     *
+     * @return result
+     */
+    @Override
+    public ReactionSystem apply(CompiledReactionSystem input, ProgressListener progress) throws CanceledException {
+        final var reactions = input.getAllReactions();
+        if (!reactions.isEmpty()) {
+            final var food = input.getFoods();
 
-            reactions.add(0, inputReactions);
-            molecules.add(0, inputFood);
+            final var support = new int[input.getNumberOfMolecules()]; // number of reactions that provide a molecule
+            for (var r = 0; r < input.getNumberOfReactions(); r++) {
+                for (var m : outputs(input, r))
+                    support[m]++;
+            }
+            final var molecules = (BitSet) food.clone();
+            for (var m = 0; m < support.length; m++) {
+                if (support[m] > 0)
+                    molecules.set(m);
+            }
+            final var counters = new ReactionCounters(input, molecules);
 
-            progress.setMaximum(100);
+            progress.setMaximum(input.getNumberOfReactions());
             progress.setProgress(0);
 
-            int i = -1;
-            do {
-                i++;
-
-                molecules.add(i + 1, Utilities.addAllMentionedProducts(inputFood, reactions.get(i)));
-                reactions.add(i + 1, Utilities.filterReactions(molecules.get(i + 1), reactions.get(i)));
-
-                progress.setProgress(Math.min(100, reactions.size()));
+            final var stack = new int[input.getNumberOfReactions()];
+            var top = 0;
+            for (var r = 0; r < input.getNumberOfReactions(); r++) {
+                if (!counters.isCatalyzedAndUninhibitedAndHasAllReactants(r)) {
+                    reactions.clear(r);
+                    stack[top++] = r;
+                }
             }
-            while (reactions.get(i + 1).size() < reactions.get(i).size());
-
-            if (reactions.get(i).size() > 0) {
-                result.getReactions().setAll(reactions.get(i));
-                result.getFoods().setAll(result.computeMentionedFoods(input.getFoods()));
+            final var touched = new BitSet();
+            while (top > 0) {
+                final var r = stack[--top];
+                for (var m : outputs(input, r)) {
+                    if (--support[m] == 0 && !food.get(m)) {
+                        molecules.clear(m);
+                        counters.remove(m, touched::set);
+                    }
+                }
+                for (var t = touched.nextSetBit(0); t >= 0; t = touched.nextSetBit(t + 1)) {
+                    if (reactions.get(t) && !(counters.isHasAllReactants(t) && counters.isCatalyzed(t))) {
+                        reactions.clear(t);
+                        stack[top++] = t;
+                    }
+                }
+                touched.clear();
+                progress.checkForCancel();
             }
+            progress.setProgress(input.getNumberOfReactions() - reactions.cardinality());
         }
-        return result;
+        return input.toReactionSystem(Name, reactions);
+    }
+
+    /**
+     * the molecules that a reaction provides, namely its products, if it runs forward, and its reactants, if it runs in
+     * reverse direction
+     */
+    private static int[] outputs(CompiledReactionSystem input, int r) {
+        if (input.isForward(r) && input.isReverse(r)) {
+            final var both = new int[input.getProducts(r).length + input.getReactants(r).length];
+            System.arraycopy(input.getProducts(r), 0, both, 0, input.getProducts(r).length);
+            System.arraycopy(input.getReactants(r), 0, both, input.getProducts(r).length, input.getReactants(r).length);
+            return both;
+        } else if (input.isForward(r))
+            return input.getProducts(r);
+        else if (input.isReverse(r))
+            return input.getReactants(r);
+        else
+            return new int[0];
     }
 }
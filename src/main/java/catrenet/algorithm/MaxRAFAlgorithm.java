@@ -19,15 +19,12 @@
 
 package catrenet.algorithm;
 
-import catrenet.model.MoleculeType;
-import catrenet.model.Reaction;
+import catrenet.model.CompiledReactionSystem;
 import catrenet.model.ReactionSystem;
 import jloda.util.CanceledException;
 import jloda.util.progress.ProgressListener;
 
-import java.util.ArrayList;
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.BitSet;
 
 /**
  * computes a maximal "reflexively autocatalytic F-generated reaction network" (RAF)
@@ -47,6 +44,14 @@ public class MaxRAFAlgorithm extends AlgorithmBase {
         return "computes the maximal RAF [HMS15] (see also [H23])";
     }
 
+    /**
+     * the output is determined by the input, so may be cached
+     */
+    @Override
+    public String getCacheParameters() {
+        return "";
+    }
+
     /**
      * computes the max RAF.
      * Ignore all inhibitions.
@@ -54,37 +59,45 @@ public class MaxRAFAlgorithm extends AlgorithmBase {
      * @returns result, empty, it none exists
      */
     public ReactionSystem apply(ReactionSystem input, ProgressListener progress) throws CanceledException {
-        final var result = new ReactionSystem();
-        result.setName(Name);
-
-        final var inputReactions = new TreeSet<>(input.getReactions());
-        final var inputFood = new TreeSet<>(input.getFoods());
-
-        if (inputReactions.size() > 0) {
-            final var reactions = new ArrayList<Set<Reaction>>();
-            final var molecules = new ArrayList<Set<MoleculeType>>();
+        return apply(new CompiledReactionSystem(input), progress);
+    }
 
-            reactions.add(0, inputReactions);
-            molecules.add(0, inputFood);
+    /**
+     * computes the max RAF on a compiled reaction system.
+     *
+     * @returns result, empty, it none exists
+     */
+    @Override
+    public ReactionSystem apply(CompiledReactionSystem input, ProgressListener progress) throws CanceledException {
+        if (input.getNumberOfReactions() == 0)
+            return input.toReactionSystem(Name, new BitSet());
 
-            progress.setMaximum(100);
-            progress.setProgress(0);
+        progress.setMaximum(100);
+        progress.setProgress(0);
 
-            var i = -1;
-            do {
-                i++;
+        return input.toReactionSystem(Name, computeMaxRAF(input, input.getFoods(), input.getAllReactions(), progress));
+    }
 
-                molecules.add(i + 1, Utilities.computeClosure(inputFood, reactions.get(i)));
-                reactions.add(i + 1, Utilities.filterReactions(molecules.get(i + 1), reactions.get(i)));
-                progress.setProgress(Math.min(100, reactions.size()));
-            }
-            while (reactions.get(i + 1).size() < reactions.get(i).size());
+    /**
+     * gets the max RAF of the input of the context, computing it only once for all algorithms that use the context
+     *
+     * @returns result, empty, it none exists
+     */
+    @Override
+    public ReactionSystem apply(AnalysisContext context, ProgressListener progress) throws CanceledException {
+        return context.getMaxRAF(progress).shallowCopy();
+    }
 
-            if (!reactions.get(i).isEmpty()) {
-                result.getReactions().setAll(reactions.get(i));
-                result.getFoods().setAll(result.computeMentionedFoods(input.getFoods()));
-            }
-        }
-        return result;
+    /**
+     * computes the ids of the max RAF reactions contained in the given set of reactions.
+     * Uses a decremental fixed point, see {@link DecrementalMaxRAF}
+     *
+     * @param compiled  the compiled reaction system
+     * @param food      food molecules
+     * @param reactions reactions to consider
+     * @return max RAF reactions
+     */
+    public static BitSet computeMaxRAF(CompiledReactionSystem compiled, BitSet food, BitSet reactions, ProgressListener progress) throws CanceledException {
+        return (BitSet) new DecrementalMaxRAF(compiled, food, reactions).computeMaxRAF(progress).clone();
     }
 }
@@ -0,0 +1,285 @@
+/*
+ *  MinIRAFBranchAndBound.java Copyright (C) 2025 Daniel H. Huson
+ *
+ *  (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package catrenet.algorithm;
+
+import catrenet.model.ReactionSystem;
+import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.SimpleIntegerProperty;
+import jloda.util.CanceledException;
+import jloda.util.ProgramExecutorService;
+import jloda.util.progress.ProgressListener;
+import jloda.util.progress.ProgressSilent;
+
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * computes a minimum irreducible RAF using branch-and-bound over the max RAF
+ * <p>
+ * Each node of the search tree is given by a set of excluded reactions and a set of included reactions. The RAFs of
+ * a node are the RAFs that avoid the excluded reactions and contain the included ones, they are all contained in the max
+ * RAF of the reactions that are not excluded, which is itself a solution. A reaction whose removal leaves no RAF that
+ * contains the included reactions is contained in all RAFs of the node and so is included, too. The number of included
+ * reactions is a lower bound on the size of any RAF of the node.
+ * <p>
+ * The search tree is processed in parallel. The search stops when the time limit or the maximum number of nodes is
+ * reached, or when canceled, and then reports the smallest RAF found so far.
+ */
+public class MinIRAFBranchAndBound extends AlgorithmBase {
+	public static final String Name = "Min iRAF";
+
+	private final IntegerProperty timeLimitSeconds = new SimpleIntegerProperty(60);
+	private final IntegerProperty maxNumberOfNodes = new SimpleIntegerProperty(1000000);
+
+	@Override
+	public String getName() {
+		return Name;
+	}
+
+	@Override
+	public String getDescription() {
+		return "computes a minimum irreducible RAF using branch-and-bound";
+	}
+
+
+	/**
+	 * computes a minimum irreducible RAF
+	 *
+	 * @param input - unexpanded catalytic reaction system
+	 * @return minimum irr RAF, or smallest irr RAF found, if the search was stopped
+	 */
+	@Override
+	public ReactionSystem apply(ReactionSystem input, ProgressListener progress) throws CanceledException {
+		return apply(new AnalysisContext(input), progress);
+	}
+
+	/**
+	 * computes a minimum irreducible RAF, searching the compiled max RAF of the context
+	 *
+	 * @return minimum irr RAF, or smallest irr RAF found, if the search was stopped
+	 */
+	@Override
+	public ReactionSystem apply(AnalysisContext context, ProgressListener progress) throws CanceledException {
+		final var maxRAF = context.getMaxRAFReactions(new ProgressSilent());
+		if (maxRAF.cardinality() <= 1)
+			return context.getCompiled().toReactionSystem(Name, maxRAF);
+
+		final var compiled = context.getCompiledMaxRAF(new ProgressSilent());
+		final var search = new Search(new DecrementalMaxRAF(compiled, compiled.getFoods(), compiled.getAllReactions()),
+				System.currentTimeMillis() + 1000L * getTimeLimitSeconds(), getMaxNumberOfNodes());
+
+		progress.setMaximum(getMaxNumberOfNodes());
+		progress.setProgress(0);
+
+		final var pool = new ForkJoinPool(ProgramExecutorService.getNumberOfCoresToUse());
+		try {
+			pool.execute(new Node(search, new BitSet(), new BitSet()));
+			var reportedSize = Integer.MAX_VALUE;
+			while (!pool.awaitQuiescence(100, TimeUnit.MILLISECONDS)) {
+				progress.setProgress(search.nodes.get());
+				if (search.getBestSize() < reportedSize) {
+					reportedSize = search.getBestSize();
+					progress.setSubtask("" + reportedSize);
+				}
+				progress.checkForCancel();
+			}
+			progress.setSubtask(search.getBestSize() + (search.stopped.get() ? "" : " (minimum)"));
+			progress.reportTaskCompleted();
+		} catch (CanceledException ignored) {
+			search.stopped.set(true);
+			pool.awaitQuiescence(1, TimeUnit.MINUTES);
+		} finally {
+			pool.shutdown();
+		}
+		return compiled.toReactionSystem(Name, reduce(search.root, search.getBest()));
+	}
+
+	/**
+	 * if the search was stopped, then the best RAF found need not be irreducible, so we remove reactions, as long as
+	 * a RAF remains
+	 *
+	 * @param root the decremental max RAF of the max RAF, is not modified
+	 * @param raf  a RAF
+	 * @return irreducible RAF contained in the given one
+	 */
+	private static BitSet reduce(DecrementalMaxRAF root, BitSet raf) throws CanceledException {
+		final var engine = new DecrementalMaxRAF(root);
+		final var toRemove = (BitSet) engine.getReactions().clone();
+		toRemove.andNot(raf);
+		engine.removeReactions(toRemove, new ProgressSilent());
+
+		for (var r = raf.nextSetBit(0); r >= 0; r = raf.nextSetBit(r + 1)) {
+			if (engine.getReactions().get(r)) {
+				toRemove.clear();
+				toRemove.set(r);
+				engine.checkpoint();
+				engine.removeReactions(toRemove, new ProgressSilent());
+				if (engine.getReactions().isEmpty())
+					engine.rollback();
+				else
+					engine.commit();
+			}
+		}
+		return engine.getReactions();
+	}
+
+	/**
+	 * the state shared by all nodes of the search tree
+	 */
+	private static class Search {
+		private final DecrementalMaxRAF root;
+		private final long deadline;
+		private final long maxNodes;
+
+		private final AtomicLong nodes = new AtomicLong();
+		private final AtomicBoolean stopped = new AtomicBoolean(false);
+		private BitSet best;
+
+		Search(DecrementalMaxRAF root, long deadline, long maxNodes) {
+			this.root = root;
+			this.deadline = deadline;
+			this.maxNodes = maxNodes;
+			best = (BitSet) root.getReactions().clone();
+		}
+
+		synchronized BitSet getBest() {
+			return best;
+		}
+
+		synchronized int getBestSize() {
+			return best.cardinality();
+		}
+
+		synchronized void offer(BitSet raf) {
+			if (raf.cardinality() < best.cardinality())
+				best = (BitSet) raf.clone();
+		}
+
+		/**
+		 * counts a node and determines whether the search must stop
+		 */
+		boolean isStop() {
+			if (!stopped.get() && (nodes.incrementAndGet() > maxNodes || System.currentTimeMillis() > deadline))
+				stopped.set(true);
+			return stopped.get();
+		}
+	}
+
+	/**
+	 * a node of the search tree. Follows the branch that excludes reactions and forks the branches that include them
+	 */
+	@SuppressWarnings("serial") // never serialized
+	private static class Node extends RecursiveAction {
+		private final Search search;
+		private final BitSet excluded;
+		private final BitSet included;
+
+		Node(Search search, BitSet excluded, BitSet included) {
+			this.search = search;
+			this.excluded = excluded;
+			this.included = included;
+		}
+
+		@Override
+		protected void compute() {
+			try {
+				final var engine = new DecrementalMaxRAF(search.root);
+				engine.removeReactions(excluded, new ProgressSilent());
+				final var toRemove = new BitSet();
+
+				while (!search.isStop()) {
+					final var reactions = engine.getReactions();
+					if (!containsAll(reactions, included))
+						return;
+					search.offer(reactions);
+					if (included.cardinality() >= search.getBestSize())
+						return;
+
+					// include all reactions whose removal leaves no RAF that contains the included reactions
+					var branch = -1;
+					var branchSize = Integer.MAX_VALUE;
+					for (var r = reactions.nextSetBit(0); r >= 0; r = reactions.nextSetBit(r + 1)) {
+						if (!included.get(r)) {
+							toRemove.set(r);
+							engine.checkpoint();
+							engine.removeReactions(toRemove, new ProgressSilent());
+							final var size = engine.getReactions().cardinality();
+							final var feasible = (size > 0 && containsAll(engine.getReactions(), included));
+							engine.rollback();
+							toRemove.clear(r);
+							if (!feasible)
+								included.set(r);
+							else if (size < branchSize) {
+								branch = r;
+								branchSize = size;
+							}
+						}
+					}
+					if (included.cardinality() >= search.getBestSize() || branch == -1)
+						return;
+
+					final var withBranch = (BitSet) included.clone();
+					withBranch.set(branch);
+					new Node(search, (BitSet) excluded.clone(), withBranch).fork();
+
+					excluded.set(branch);
+					toRemove.set(branch);
+					engine.removeReactions(toRemove, new ProgressSilent());
+					toRemove.clear(branch);
+				}
+			} catch (CanceledException ignored) { // silent progress is never canceled
+			}
+		}
+
+		private static boolean containsAll(BitSet set, BitSet subset) {
+			final var missing = (BitSet) subset.clone();
+			missing.andNot(set);
+			return missing.isEmpty();
+		}
+	}
+
+	public int getTimeLimitSeconds() {
+		return timeLimitSeconds.get();
+	}
+
+	public IntegerProperty timeLimitSecondsProperty() {
+		return timeLimitSeconds;
+	}
+
+	public void setTimeLimitSeconds(int timeLimitSeconds) {
+		this.timeLimitSeconds.set(timeLimitSeconds);
+	}
+
+	public int getMaxNumberOfNodes() {
+		return maxNumberOfNodes.get();
+	}
+
+	public IntegerProperty maxNumberOfNodesProperty() {
+		return maxNumberOfNodes;
+	}
+
+	public void setMaxNumberOfNodes(int maxNumberOfNodes) {
+		this.maxNumberOfNodes.set(maxNumberOfNodes);
+	}
+}
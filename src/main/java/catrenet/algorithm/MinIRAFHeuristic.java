@@ -19,16 +19,25 @@
 
 package catrenet.algorithm;
 
+import catrenet.model.CompiledReactionSystem;
+import catrenet.model.Reaction;
 import catrenet.model.ReactionSystem;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import jloda.util.CanceledException;
 import jloda.util.CollectionUtils;
-import jloda.util.Single;
+import jloda.util.ProgramExecutorService;
 import jloda.util.progress.ProgressListener;
 import jloda.util.progress.ProgressSilent;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 /**
  * heuristically tries to compute a minimum irreducible RAF
@@ -50,6 +59,11 @@ public class MinIRAFHeuristic extends AlgorithmBase {
         return "searches for irreducible RAFs in a heuristic fashion [HS23]";
     }
 
+    @Override
+    public String getCacheParameters() {
+        return "orders=" + getNumberOfRandomInsertionOrders();
+    }
+
     /**
 	 * heuristically tries to compute a minimum irreducible RAF
      *
@@ -57,75 +71,148 @@ public class MinIRAFHeuristic extends AlgorithmBase {
      * @return irr RAF or null
      */
     public ReactionSystem apply(ReactionSystem input, ProgressListener progress) throws CanceledException {
-		var list = applyAllSmallest(input, progress);
+		return apply(new AnalysisContext(input), progress);
+    }
+
+    /**
+	 * heuristically tries to compute a minimum irreducible RAF, using the max RAF of the context
+     *
+     * @return irr RAF or null
+     */
+    @Override
+    public ReactionSystem apply(AnalysisContext context, ProgressListener progress) throws CanceledException {
+		var list = applyAllSmallest(context, progress);
 		if (!list.isEmpty())
 			return list.get(0);
 		else return null;
     }
 
     /**
-	 * heuristically tries to compute a minimum irreducible RAF
+	 * heuristically tries to compute a minimum irreducible RAF. The random insertion orders are processed in parallel,
+	 * sharing the size of the smallest RAF found so far, so that an insertion order is abandoned once it cannot beat it.
+	 * The result only depends on the number of random insertion orders
      *
      * @param input - unexpanded catalytic reaction system
-     * @return irr RAF or null
+     * @return all smallest irr RAFs found, in the order of the insertion orders that first found them
      */
     public ArrayList<ReactionSystem> applyAllSmallest(ReactionSystem input, ProgressListener progress) throws CanceledException {
+        return applyAllSmallest(new AnalysisContext(input), progress);
+    }
+
+    /**
+	 * heuristically tries to compute a minimum irreducible RAF, using the compiled max RAF of the context
+     *
+     * @return all smallest irr RAFs found, in the order of the insertion orders that first found them
+     */
+    public ArrayList<ReactionSystem> applyAllSmallest(AnalysisContext context, ProgressListener progress) throws CanceledException {
         progress.setMaximum(getNumberOfRandomInsertionOrders());
         progress.setProgress(0);
 
-        final var maxRAF = new MaxRAFAlgorithm().apply(input, new ProgressSilent());
-        final var reactions = new ArrayList<>(maxRAF.getReactions());
+        final var compiled = context.getCompiledMaxRAF(new ProgressSilent());
+        final var maxRAFReactions = compiled.getReactions(compiled.getAllReactions());
+        final var maxRAF = compiled.getAllReactions();
+        final var decrementalMaxRAF = new DecrementalMaxRAF(compiled, compiled.getFoods(), maxRAF);
 
         final var seeds = new ArrayList<Integer>();
         for (var i = 0; i < getNumberOfRandomInsertionOrders(); i++) {
             seeds.add(123 * i); // different seeds
         }
 
+        final var results = new BitSet[seeds.size()];
+        final var bestSize = new AtomicInteger(maxRAF.cardinality());
+        final var done = new AtomicInteger();
+        final var canceled = new AtomicBoolean(false);
+
+        final var pool = new ForkJoinPool(ProgramExecutorService.getNumberOfCoresToUse());
+        try {
+            final var future = pool.submit(() -> IntStream.range(0, seeds.size()).parallel().forEach(i -> {
+                if (!canceled.get()) {
+                    results[i] = computeIRAF(decrementalMaxRAF, compiled, CollectionUtils.randomize(maxRAFReactions, seeds.get(i)), bestSize, canceled);
+                    done.incrementAndGet();
+                }
+            }));
+            try {
+                var reportedSize = bestSize.get();
+                while (true) {
+                    try {
+                        future.get(100, TimeUnit.MILLISECONDS);
+                        break;
+                    } catch (TimeoutException ignored) {
+                    }
+                    progress.setProgress(done.get());
+                    if (bestSize.get() < reportedSize) {
+                        reportedSize = bestSize.get();
+                        progress.setSubtask("" + reportedSize);
+                    }
+                    progress.checkForCancel();
+                }
+                progress.reportTaskCompleted();
+            } catch (CanceledException | InterruptedException ex) {
+                canceled.set(true);
+                future.quietlyJoin();
+            } catch (ExecutionException ex) {
+                throw new RuntimeException(ex.getCause());
+            }
+        } finally {
+            pool.shutdown();
+        }
+
         final var best = new ArrayList<ReactionSystem>();
-        final var bestSize = new Single<>(maxRAF.size());
-		progress.setMaximum(seeds.size());
-		progress.setProgress(0);
-		try {
-			for (var seed : seeds) {
-				var ordering = CollectionUtils.randomize(reactions, seed);
-				var work = maxRAF.shallowCopy();
-				work.setName(Name);
-				for (var r : ordering) {
-					work.getReactions().remove(r);
-					try {
-						progress.checkForCancel();
-						var next = new MaxRAFAlgorithm().apply(work, new ProgressSilent());
-						next.setName(Name);
-						if (next.size() > 0 && next.size() <= work.size()) {
-							work = next;
-							if (next.size() < bestSize.get()) {
-								best.clear();
-								bestSize.set(next.size());
-								progress.setSubtask("" + bestSize.get());
-							}
-							if (next.size() == bestSize.get() && best.stream().noneMatch(a -> CollectionUtils.equalsAsSets(next.getReactions(), a.getReactions()))) {
-								best.add(next);
-							}
-							if (bestSize.get() == 1)
-								break;
-						} else
-							work.getReactions().add(r); // put back
-					} catch (CanceledException ignored) {
-					}
-				}
-				progress.incrementProgress();
-			}
-			progress.reportTaskCompleted();
-		} catch (CanceledException ignored) {
-		}
+        final var seen = new HashSet<BitSet>();
+        for (var result : results) {
+            if (result != null && result.cardinality() == bestSize.get() && seen.add(result))
+                best.add(compiled.toReactionSystem(Name, result));
+        }
 		if (best.isEmpty()) {
-			var result = maxRAF.shallowCopy();
-			result.setName(Name);
-			best.add(result);
+			best.add(compiled.toReactionSystem(Name, maxRAF));
 		}
         return best;
     }
 
+    /**
+     * computes an irreducible RAF by trying to remove the reactions of the max RAF in the given order.
+     * If removing a reaction leaves no RAF, then the reaction is contained in every RAF of the current system, and thus
+     * in the final result. Hence, the number of such reactions is a lower bound on the size of the result.
+     * Each removal is tried on a decremental max RAF and is rolled back, if it leaves no RAF
+     *
+     * @param maxRAF   the decremental max RAF of the compiled max RAF, is not modified
+     * @param ordering the order in which to try to remove reactions
+     * @param bestSize the size of the smallest RAF found so far by any insertion order, is updated
+     * @param canceled if set, returns the current RAF
+     * @return irreducible RAF, or null, if it cannot be smaller than the best size
+     */
+    private static BitSet computeIRAF(DecrementalMaxRAF maxRAF, CompiledReactionSystem compiled, Collection<Reaction> ordering, AtomicInteger bestSize, AtomicBoolean canceled) {
+        final var work = new DecrementalMaxRAF(maxRAF);
+        final var toRemove = new BitSet();
+        var required = 0;
+        for (var reaction : ordering) {
+            if (canceled.get())
+                break;
+            if (required > bestSize.get())
+                return null;
+            final var r = compiled.getReactionId(reaction);
+            if (work.getReactions().get(r)) {
+                toRemove.set(r);
+                work.checkpoint();
+                try {
+                    work.removeReactions(toRemove, new ProgressSilent());
+                } catch (CanceledException ignored) { // silent progress is never canceled
+                }
+                toRemove.clear(r);
+                if (!work.getReactions().isEmpty()) {
+                    work.commit();
+                    bestSize.accumulateAndGet(work.getReactions().cardinality(), Math::min);
+                    if (work.getReactions().cardinality() == 1)
+                        break;
+                } else {
+                    work.rollback(); // put back
+                    required++;
+                }
+            }
+        }
+        return (BitSet) work.getReactions().clone();
+    }
+
     public int getNumberOfRandomInsertionOrders() {
         return numberOfRandomInsertionOrders.get();
     }
@@ -63,6 +63,7 @@ public class MinRAFGeneratingElement extends AlgorithmBase {
         return "Identifies a subset of the maxRAF that is (i) a RAF and (ii) generates a given element x (not in the food set) and (iii) which is minimal amongst all such sets satisfying (i) and (ii)";
     }
 
+
     public ObservableList<MoleculeType> getTargets() {
         return targets;
     }
@@ -74,6 +75,17 @@ public class MinRAFGeneratingElement extends AlgorithmBase {
      * @return Min RAF generating a specific element
      */
     public ReactionSystem apply(ReactionSystem input, ProgressListener progress) throws CanceledException {
+        return apply(new AnalysisContext(input), progress);
+    }
+
+    /**
+     * Identifies a subset of the maxRAF that generates a given element, using the max RAF of the context
+     *
+     * @return Min RAF generating a specific element
+     */
+    @Override
+    public ReactionSystem apply(AnalysisContext context, ProgressListener progress) throws CanceledException {
+        final var input = context.getInput();
         var resultSystemName = "";
         if (getTargets().size() == 1)
             resultSystemName = (Name + " '" + getTargets().get(0).getName() + "'");
@@ -91,7 +103,7 @@ public class MinRAFGeneratingElement extends AlgorithmBase {
             return empty;
         }
 
-        var maxRAF = (new MaxRAFAlgorithm()).apply(input, progress);
+        var maxRAF = context.getMaxRAF(progress);
         if (maxRAF.size() == 0) {
             NotificationManager.showWarning("Max RAF is empty");
             return empty;
@@ -107,13 +119,14 @@ public class MinRAFGeneratingElement extends AlgorithmBase {
             augmented.getReactions().add(r1);
         }
 
-        var iRAF = minIRAFHeuristic.apply(augmented, progress);
+        var augmentedContext = new AnalysisContext(augmented);
+        var iRAF = minIRAFHeuristic.apply(augmentedContext, progress);
         iRAF.setName(resultSystemName);
         if (iRAF.size() == 0) {
             NotificationManager.showWarning("Irreducible RAF is empty");
             return empty;
         }
-        var coreRAF = new CoreRAFAlgorithm().apply(augmented, progress);
+        var coreRAF = new CoreRAFAlgorithm().apply(augmentedContext, progress);
 
         if (coreRAF.size() > 0) {
             NotificationManager.showInformation("Irreducible is unique");
@@ -122,15 +135,15 @@ public class MinRAFGeneratingElement extends AlgorithmBase {
     }
 
     public static String andItemToAll(Collection<MoleculeType> conjunctions, MoleculeType x) {
-        if (conjunctions.isEmpty() || conjunctions.stream().allMatch(m -> m == FORMAL_FOOD)) {
+        if (conjunctions.isEmpty() || conjunctions.stream().allMatch(FORMAL_FOOD::equals)) {
             conjunctions.clear();
             return x.getName();
         } else {
-            var result = new ArrayList<MoleculeType>();
+            var result = new ArrayList<String>();
             for (var one : conjunctions) {
                 if (one.equals(x))
-                    result.add(x);
-                else result.add(MoleculeType.valueOf(one.getName() + "&" + x));
+                    result.add(x.getName());
+                else result.add(one.getName() + "&" + x);
             }
             return StringUtils.toString(result, ",");
         }
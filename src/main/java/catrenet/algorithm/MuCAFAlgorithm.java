@@ -19,8 +19,7 @@
 
 package catrenet.algorithm;
 
-import catrenet.model.MoleculeType;
-import catrenet.model.Reaction;
+import catrenet.model.CompiledReactionSystem;
 import catrenet.model.ReactionSystem;
 import jloda.util.CanceledException;
 import jloda.util.CollectionUtils;
@@ -33,7 +32,7 @@ import java.util.*;
  * Daniel Huson, 7.2019
  * Based on notes by Mike Steel
  */
-public class MuCAFAlgorithm extends AlgorithmBase {
+public class MuCAFAlgorithm extends AlgorithmBase implements IRandomizedAlgorithm {
     public static final String Name = "MU CAF";
 
     @Override
@@ -46,54 +45,84 @@ public class MuCAFAlgorithm extends AlgorithmBase {
 		return "computes one maximal uninhibited CAF";
 	}
 
-	/**
-     * computes a MU CAF
-     *
-     * @param input - unexpanded catalytic reaction system
-     * @return MU CAF or empty set
-     */
-    public ReactionSystem apply(ReactionSystem input, ProgressListener progress) throws CanceledException {
-        final ReactionSystem result = new ReactionSystem();
-        result.setName(Name);
 
-		final ArrayList<Reaction> inputReactions = CollectionUtils.randomize(input.getReactions(), new Random());
-		final Set<MoleculeType> inputFood = new TreeSet<>(input.getFoods());
+	/**
+	 * computes a MU CAF
+	 *
+	 * @param input - unexpanded catalytic reaction system
+	 * @return MU CAF or empty set
+	 */
+	public ReactionSystem apply(ReactionSystem input, ProgressListener progress) throws CanceledException {
+		return apply(new CompiledReactionSystem(input), progress);
+	}
 
-        final ArrayList<Set<MoleculeType>> molecules = new ArrayList<>();
-        final ArrayList<Set<Reaction>> reactions = new ArrayList<>();
-        final ArrayList<Set<MoleculeType>> inhibitions = new ArrayList<>();
+	/**
+	 * computes a MU CAF, using a new random seed
+	 *
+	 * @return MU CAF or empty set
+	 */
+	@Override
+	public ReactionSystem apply(CompiledReactionSystem input, ProgressListener progress) throws CanceledException {
+		return input.toReactionSystem(Name, apply(input, new Random().nextLong()));
+	}
 
-        molecules.add(0, inputFood);
-        reactions.add(0, new HashSet<>());
-        inhibitions.add(0, new HashSet<>());
+	/**
+	 * computes a MU CAF. The reactions are placed in a random order and, as long as possible, the first reaction
+	 * that has all reactants, is catalyzed and is not inhibited by the current molecules is added, together with its products.
+	 * As molecules are only ever added, a reaction that is inhibited stays inhibited and all other reactions stay available,
+	 * so the available reactions are kept in a queue ordered by position, and only reactions that mention a new molecule are checked again
+	 *
+	 * @param input the compiled input
+	 * @param seed  seed for the order of reactions
+	 * @return ids of the reactions of the MU CAF
+	 */
+	@Override
+	public BitSet apply(CompiledReactionSystem input, long seed) {
+		final var order = CollectionUtils.randomize(input.getAllReactions().stream().boxed().toList(), seed);
+		final var position = new int[input.getNumberOfReactions()];
+		for (var i = 0; i < order.size(); i++) {
+			position[order.get(i)] = i;
+		}
 
-        progress.setMaximum(100);
-        int i = 0;
-        while (true) {
-            i++;
+		final var molecules = input.getFoods();
+		final var counters = new ReactionCounters(input, molecules);
+		final var queue = new PriorityQueue<Integer>(Comparator.comparingInt(r -> position[r]));
+		final var queued = new BitSet();
+		for (var r : order) {
+			if (counters.isCatalyzedAndUninhibitedAndHasAllReactants(r)) {
+				queue.add(r);
+				queued.set(r);
+			}
+		}
 
-            Reaction anUninhibitedReaction = null;
-			for (Reaction reaction : CollectionUtils.difference(inputReactions, reactions.get(i - 1))) {
-				if (reaction.isCatalyzedAndUninhibitedAndHasAllReactants(molecules.get(i - 1), molecules.get(i - 1), inhibitions.get(i - 1), reaction.getDirection())) {
-					anUninhibitedReaction = reaction;
-					break;
+		final var result = new BitSet();
+		final var touched = new BitSet();
+		while (!queue.isEmpty()) {
+			final int r = queue.poll();
+			if (!counters.isCatalyzedAndUninhibitedAndHasAllReactants(r))
+				continue; // inhibited by a molecule added after it was queued
+			result.set(r);
+			touched.clear();
+			if (input.isForward(r))
+				addMolecules(input.getProducts(r), molecules, counters, touched);
+			if (input.isReverse(r))
+				addMolecules(input.getReactants(r), molecules, counters, touched);
+			for (var s = touched.nextSetBit(0); s >= 0; s = touched.nextSetBit(s + 1)) {
+				if (!queued.get(s) && counters.isCatalyzedAndUninhibitedAndHasAllReactants(s)) {
+					queue.add(s);
+					queued.set(s);
 				}
 			}
+		}
+		return result;
+	}
 
-            if (anUninhibitedReaction != null) {
-				reactions.add(i, CollectionUtils.union(reactions.get(i - 1), Collections.singleton(anUninhibitedReaction)));
-				molecules.add(i, Utilities.addAllMentionedProducts(molecules.get(i - 1), reactions.get(i)));
-				inhibitions.add(i, CollectionUtils.union(inhibitions.get(i - 1), anUninhibitedReaction.getInhibitions()));
-            } else
-                break;
-            progress.setProgress(reactions.size());
-        }
-
-        if (reactions.get(i - 1).size() > 0) {
-            result.getReactions().setAll(reactions.get(i - 1));
-            result.getFoods().setAll(result.computeMentionedFoods(input.getFoods()));
-        }
-
-        return result;
-    }
+	private static void addMolecules(int[] ids, BitSet molecules, ReactionCounters counters, BitSet touched) {
+		for (var m : ids) {
+			if (!molecules.get(m)) {
+				molecules.set(m);
+				counters.add(m, touched::set);
+			}
+		}
+	}
 }
@@ -19,7 +19,6 @@
 
 package catrenet.algorithm;
 
-import catrenet.model.MoleculeType;
 import catrenet.model.Reaction;
 import catrenet.model.ReactionSystem;
 import jloda.util.StringUtils;
@@ -76,7 +75,7 @@ public class PolymerModel implements IDescribed {
 
 		var foodNames = new ArrayList<String>();
 		createPolymersRec(a, k, "", foodNames);
-		reactionSystem.getFoods().addAll(foodNames.stream().map(MoleculeType::valueOf).toList());
+		reactionSystem.getFoods().addAll(foodNames.stream().map(reactionSystem.getMoleculeTypePool()::valueOf).toList());
 
 		var polymers = new ArrayList<String>();
 		createPolymersRec(a, n, "", polymers);
@@ -91,10 +90,10 @@ public class PolymerModel implements IDescribed {
 			for (var i = 1; i < polymer.length(); i++) {
 				var prefix = polymer.substring(0, i);
 				var suffix = polymer.substring(i);
-				var reaction = new Reaction(String.format("r%03d", (++count)));
-				reaction.getReactants().add(MoleculeType.valueOf(prefix));
-				reaction.getReactants().add(MoleculeType.valueOf(suffix));
-				reaction.getProducts().add(MoleculeType.valueOf(polymer));
+				var reaction = new Reaction(String.format("r%03d", (++count)), reactionSystem.getMoleculeTypePool());
+				reaction.getReactants().add(reactionSystem.getMoleculeTypePool().valueOf(prefix));
+				reaction.getReactants().add(reactionSystem.getMoleculeTypePool().valueOf(suffix));
+				reaction.getProducts().add(reactionSystem.getMoleculeTypePool().valueOf(polymer));
 				reaction.setDirection(Reaction.Direction.both);
 				reactions.add(reaction);
 			}
@@ -48,16 +48,32 @@ public class QuotientRAFAlgorithm extends AlgorithmBase {
         return "computes the Max RAF minus all the reactions from the Max CAF and adds all produces of the Max CAF to the food set [SXH20]";
     }
 
+    /**
+     * the output is determined by the input, so may be cached
+     */
+    @Override
+    public String getCacheParameters() {
+        return "";
+    }
+
     /**
      * compute the quotient max RAF
      *
 	 */
     public ReactionSystem apply(ReactionSystem input, ProgressListener progress) throws CanceledException {
+        return apply(new AnalysisContext(input), progress);
+    }
+
+    /**
+     * compute the quotient max RAF, using the max RAF of the context
+     */
+    @Override
+    public ReactionSystem apply(AnalysisContext context, ProgressListener progress) throws CanceledException {
         progress.setTasks("Compute quotient RAF", "");
         progress.setMaximum(3);
         progress.setProgress(0);
 
-        final ReactionSystem maxRAF = new MaxRAFAlgorithm().apply(input, new ProgressSilent());
+        final ReactionSystem maxRAF = context.getMaxRAF(new ProgressSilent());
         progress.setProgress(1);
 
         final ReactionSystem maxCAF = new MaxCAFAlgorithm().apply(maxRAF, new ProgressSilent());
@@ -73,7 +89,7 @@ public class QuotientRAFAlgorithm extends AlgorithmBase {
         products.addAll(maxCAF.getReactions().stream().filter(r -> r.getDirection() == Reaction.Direction.reverse || r.getDirection() == Reaction.Direction.both).map(Reaction::getReactants).flatMap(Collection::stream).collect(Collectors.toList()));
         products.addAll(result.getFoods()); // these two lines ensures alphabetical order
 
-        result.getFoods().setAll(products);
+        result.setFoods(products);
         progress.setProgress(3);
         return result;
     }
@@ -0,0 +1,151 @@
+/*
+ *  ReactionCounters.java Copyright (C) 2025 Daniel H. Huson
+ *
+ *  (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package catrenet.algorithm;
+
+import catrenet.model.CompiledReactionSystem;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntConsumer;
+
+/**
+ * for a changing set of molecules, keeps track of which reactions have all their reactants (or all their products, in
+ * reverse direction), are catalyzed and are inhibited. Uses a counter of missing molecules for each reaction side and
+ * each catalyst conjunction, so that adding or removing a molecule only touches the reactions that mention it
+ */
+public class ReactionCounters {
+	private final CompiledReactionSystem compiled;
+
+	private final int[] missing; // number of missing inputs, index 2r for forward direction of r, 2r+1 for reverse
+	private final int[] conjunctionStart; // conjunctions of reaction r are numbered conjunctionStart[r] to conjunctionStart[r+1]-1
+	private final int[] conjunctionMissing; // number of missing molecules of a catalyst conjunction
+	private final int[] satisfied; // number of catalyst conjunctions of a reaction that have no missing molecules
+	private final int[] inhibitors; // number of present inhibitors of a reaction
+
+	/**
+	 * sets up the counters for the given set of molecules
+	 *
+	 * @param compiled  the compiled reaction system
+	 * @param molecules the current molecules
+	 */
+	public ReactionCounters(CompiledReactionSystem compiled, BitSet molecules) {
+		this.compiled = compiled;
+		final var n = compiled.getNumberOfReactions();
+		missing = new int[2 * n];
+		conjunctionStart = new int[n + 1];
+		satisfied = new int[n];
+		inhibitors = new int[n];
+
+		for (var r = 0; r < n; r++) {
+			conjunctionStart[r + 1] = conjunctionStart[r] + compiled.getCatalystConjunctions(r).length;
+		}
+		conjunctionMissing = new int[conjunctionStart[n]];
+
+		for (var r = 0; r < n; r++) {
+			missing[2 * r] = countMissing(molecules, compiled.getReactants(r));
+			missing[2 * r + 1] = countMissing(molecules, compiled.getProducts(r));
+			final var conjunctions = compiled.getCatalystConjunctions(r);
+			for (var i = 0; i < conjunctions.length; i++) {
+				conjunctionMissing[conjunctionStart[r] + i] = countMissing(molecules, conjunctions[i]);
+				if (conjunctionMissing[conjunctionStart[r] + i] == 0)
+					satisfied[r]++;
+			}
+			inhibitors[r] = compiled.getInhibitions(r).length - countMissing(molecules, compiled.getInhibitions(r));
+		}
+	}
+
+	/**
+	 * updates the counters for a molecule that has been added to the set of molecules
+	 *
+	 * @param touched is called for every reaction whose status may have changed, possibly more than once
+	 */
+	public void add(int m, IntConsumer touched) {
+		update(m, -1, touched);
+	}
+
+	/**
+	 * updates the counters for a molecule that has been removed from the set of molecules
+	 *
+	 * @param touched is called for every reaction whose status may have changed, possibly more than once
+	 */
+	public void remove(int m, IntConsumer touched) {
+		update(m, 1, touched);
+	}
+
+	/**
+	 * does the reaction have all its reactants, or all its products, if it runs in reverse direction?
+	 */
+	public boolean isHasAllReactants(int r) {
+		return (compiled.isForward(r) && missing[2 * r] == 0) || (compiled.isReverse(r) && missing[2 * r + 1] == 0);
+	}
+
+	public boolean isCatalyzed(int r) {
+		return conjunctionStart[r] == conjunctionStart[r + 1] || satisfied[r] > 0;
+	}
+
+	public boolean isInhibited(int r) {
+		return inhibitors[r] > 0;
+	}
+
+	/**
+	 * counter equivalent of {@link CompiledReactionSystem#isCatalyzedAndUninhibitedAndHasAllReactants(int, BitSet)}
+	 */
+	public boolean isCatalyzedAndUninhibitedAndHasAllReactants(int r) {
+		return isHasAllReactants(r) && isCatalyzed(r) && !isInhibited(r);
+	}
+
+	private void update(int m, int delta, IntConsumer touched) {
+		for (var r : compiled.getReactionsWithReactant(m)) {
+			missing[2 * r] += delta;
+			touched.accept(r);
+		}
+		for (var r : compiled.getReactionsWithProduct(m)) {
+			missing[2 * r + 1] += delta;
+			touched.accept(r);
+		}
+		for (var r : compiled.getReactionsWithCatalyst(m)) {
+			final var conjunctions = compiled.getCatalystConjunctions(r);
+			for (var i = 0; i < conjunctions.length; i++) {
+				if (Arrays.binarySearch(conjunctions[i], m) >= 0) {
+					final var c = conjunctionStart[r] + i;
+					if (conjunctionMissing[c] == 0)
+						satisfied[r]--;
+					conjunctionMissing[c] += delta;
+					if (conjunctionMissing[c] == 0)
+						satisfied[r]++;
+				}
+			}
+			touched.accept(r);
+		}
+		for (var r : compiled.getReactionsWithInhibition(m)) {
+			inhibitors[r] -= delta;
+			touched.accept(r);
+		}
+	}
+
+	private static int countMissing(BitSet molecules, int[] ids) {
+		var count = 0;
+		for (var m : ids) {
+			if (!molecules.get(m))
+				count++;
+		}
+		return count;
+	}
+}
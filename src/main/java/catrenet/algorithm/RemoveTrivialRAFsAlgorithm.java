@@ -25,6 +25,7 @@ import catrenet.model.ReactionSystem;
 import jloda.util.CanceledException;
 import jloda.util.progress.ProgressListener;
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.TreeSet;
@@ -47,6 +48,14 @@ public class RemoveTrivialRAFsAlgorithm extends AlgorithmBase {
         return " computes CRS that is obtained by removing all trivial RAFs";
     }
 
+    /**
+     * the output is determined by the input, so may be cached
+     */
+    @Override
+    public String getCacheParameters() {
+        return "";
+    }
+
     /**
      * remove all trivial RAFs
      *
@@ -76,13 +85,13 @@ public class RemoveTrivialRAFsAlgorithm extends AlgorithmBase {
                     return true; // reactants not present (in either direction)
 
                 // compute the conjunctive normal form and check that no conjunction exists for which all catalysts are in the food and products set:
-                return r.getCatalystConjunctions().parallelStream().map(c -> MoleculeType.valuesOf(c.getName().split("&"))).noneMatch(foodAndProducts::containsAll);
+                return Arrays.stream(r.getCatalystConjunctionElements()).noneMatch(c -> foodAndProducts.containsAll(Arrays.asList(c)));
             } catch (CanceledException ignore) {
                 return false;
             }
         }).collect(Collectors.toList()));
 
-        result.getFoods().setAll(result.computeMentionedFoods(food));
+        result.setFoods(result.computeMentionedFoods(food));
 
         return result;
     }
@@ -0,0 +1,148 @@
+/*
+ *  ReplicateRuns.java Copyright (C) 2025 Daniel H. Huson
+ *
+ *  (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package catrenet.algorithm;
+
+import catrenet.model.CompiledReactionSystem;
+import jloda.util.CanceledException;
+import jloda.util.ProgramExecutorService;
+import jloda.util.progress.ProgressListener;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * runs a randomized algorithm many times in parallel and counts how often each distinct output occurs.
+ * The seed of each run is derived from a single seed, so all runs can be reproduced. Outputs are compared as
+ * sets of reaction ids, and only one bit set is kept per distinct output
+ */
+public class ReplicateRuns {
+	/**
+	 * a distinct output
+	 *
+	 * @param id        number of the output, in order of decreasing count
+	 * @param reactions ids of the output reactions
+	 * @param count     number of runs that produced the output
+	 * @param seed      seed of the first run that produced the output, {@link IRandomizedAlgorithm#apply} reproduces the output from it
+	 */
+	public record Result(int id, BitSet reactions, int count, long seed) {
+		public int size() {
+			return reactions.cardinality();
+		}
+	}
+
+	/**
+	 * runs the algorithm the given number of times
+	 *
+	 * @param compiled     the compiled input
+	 * @param algorithm    the randomized algorithm
+	 * @param numberOfRuns number of runs
+	 * @param seed         seed used to derive the seeds of all runs, running again with the same seed reproduces all outputs
+	 * @return distinct outputs, sorted by decreasing count and then by first run
+	 */
+	public static List<Result> apply(CompiledReactionSystem compiled, IRandomizedAlgorithm algorithm, int numberOfRuns, long seed, ProgressListener progress) throws CanceledException {
+		final var seeds = computeSeeds(seed, numberOfRuns);
+		final var tallies = new ConcurrentHashMap<BitSet, Tally>();
+
+		progress.setMaximum(numberOfRuns);
+		progress.setProgress(0);
+
+		final var done = new AtomicInteger();
+		final var canceled = new AtomicBoolean(false);
+
+		final var pool = new ForkJoinPool(ProgramExecutorService.getNumberOfCoresToUse());
+		try {
+			final var future = pool.submit(() -> IntStream.range(0, numberOfRuns).parallel().forEach(run -> {
+				if (!canceled.get()) {
+					tallies.computeIfAbsent(algorithm.apply(compiled, seeds[run]), k -> new Tally()).add(run);
+					done.incrementAndGet();
+				}
+			}));
+			try {
+				while (true) {
+					try {
+						future.get(100, TimeUnit.MILLISECONDS);
+						break;
+					} catch (TimeoutException ignored) {
+					}
+					progress.setProgress(done.get());
+					progress.checkForCancel();
+				}
+			} catch (CanceledException | InterruptedException ex) {
+				canceled.set(true);
+				future.quietlyJoin();
+				throw new CanceledException();
+			} catch (ExecutionException ex) {
+				throw new RuntimeException(ex.getCause());
+			}
+		} finally {
+			pool.shutdown();
+		}
+
+		final var entries = new ArrayList<>(tallies.entrySet());
+		entries.sort(Comparator.comparingInt((Map.Entry<BitSet, Tally> e) -> -e.getValue().count.get()).thenComparingInt(e -> e.getValue().firstRun.get()));
+		final var results = new ArrayList<Result>(entries.size());
+		for (var entry : entries) {
+			results.add(new Result(results.size() + 1, entry.getKey(), entry.getValue().count.get(), seeds[entry.getValue().firstRun.get()]));
+		}
+		return results;
+	}
+
+	/**
+	 * writes the frequency table, one line per distinct output, containing its id, size, count and seed
+	 */
+	public static void writeTable(Collection<Result> results, Writer w) throws IOException {
+		w.write("#Id\tSize\tCount\tSeed\n");
+		for (var result : results) {
+			w.write(result.id() + "\t" + result.size() + "\t" + result.count() + "\t" + result.seed() + "\n");
+		}
+		w.flush();
+	}
+
+	/**
+	 * computes the seeds of all runs
+	 */
+	public static long[] computeSeeds(long seed, int numberOfRuns) {
+		final var random = new SplittableRandom(seed);
+		final var seeds = new long[numberOfRuns];
+		for (var run = 0; run < numberOfRuns; run++) {
+			seeds[run] = random.nextLong();
+		}
+		return seeds;
+	}
+
+	private static class Tally {
+		private final AtomicInteger count = new AtomicInteger();
+		private final AtomicInteger firstRun = new AtomicInteger(Integer.MAX_VALUE);
+
+		void add(int run) {
+			count.incrementAndGet();
+			firstRun.accumulateAndGet(run, Math::min);
+		}
+	}
+}
@@ -20,172 +20,203 @@
 
 package catrenet.algorithm;
 
+import catrenet.model.CompiledReactionSystem;
 import catrenet.model.MoleculeType;
 import catrenet.model.Reaction;
 import catrenet.model.ReactionSystem;
 import catrenet.view.EdgeType;
-import javafx.util.Pair;
 import jloda.graph.Graph;
 import jloda.graph.Node;
-import jloda.util.SetUtils;
 import jloda.util.StringUtils;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.*;
 
 public class Stratification {
 
-	public static String report(ReactionSystem reactionSystem) {
-		var buf = new StringBuilder();
-		buf.append("\nStratification of reactions and molecules:\n");
-		buf.append("Rank 0 molecules (food set):\n");
+	/**
+	 * writes the stratification of reactions and molecules. The ranks are computed level by level by the closure engine,
+	 * and each rank is written as soon as it has been computed
+	 *
+	 * @param reactionSystem the reaction system
+	 * @param w              the writer
+	 */
+	public static void report(ReactionSystem reactionSystem, Writer w) throws IOException {
+		w.write("\nStratification of reactions and molecules:\n");
+		w.write("Rank 0 molecules (food set):\n");
 		var molecules = new HashSet<>(reactionSystem.getFoods());
 		for (var moleculeType : molecules) {
 			if (!moleculeType.getName().equals("$"))
-				buf.append("\t").append(moleculeType.getName()).append("\n");
+				w.write("\t" + moleculeType.getName() + "\n");
 		}
-		buf.append("\n");
+		w.write("\n");
 
-		var reactions = new HashSet<Reaction>();
+		var compiled = new CompiledReactionSystem(reactionSystem);
+		var stratified = new BitSet();
 
-		var i = 0;
-		while (true) {
-			i++;
-			var pair = computeOneStep(molecules, reactions, reactionSystem.getReactions());
-			var nextReactions = pair.getKey();
-			var nextMolecules = pair.getValue();
-
-			if (nextReactions.isEmpty())
-				break;
-
-			buf.append("Rank ").append(i).append(" reactions:\n");
-			for (var reaction : nextReactions) {
-				buf.append("\t").append(reaction.getName()).append("\n");
-			}
-			reactions.addAll(nextReactions);
-			buf.append("Rank ").append(i).append(" molecules:\n");
-			for (var moleculeType : nextMolecules) {
-				buf.append("\t").append(moleculeType.getName()).append("\n");
-			}
-			molecules.addAll(nextMolecules);
-			buf.append("\n");
+		try {
+			new ClosureEngine(compiled).computeLevels(compiled.getFoods(), compiled.getAllReactions(), (rank, nextReactions, nextMolecules) -> {
+				try {
+					w.write("Rank " + rank + " reactions:\n");
+					for (var reaction : new TreeSet<>(compiled.getReactions(nextReactions))) {
+						w.write("\t" + reaction.getName() + "\n");
+					}
+					stratified.or(nextReactions);
+					w.write("Rank " + rank + " molecules:\n");
+					for (var moleculeType : new TreeSet<>(compiled.getMolecules(nextMolecules))) {
+						w.write("\t" + moleculeType.getName() + "\n");
+					}
+					w.write("\n");
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
 		}
 
-		var reactants = new TreeSet<MoleculeType>();
-		var products = new TreeSet<MoleculeType>();
-		for (var reaction : reactions) {
-			reactants.addAll(reaction.getReactants());
-			products.addAll(reaction.getProducts());
+		var reactants = new BitSet();
+		var products = new BitSet();
+		for (var r = stratified.nextSetBit(0); r >= 0; r = stratified.nextSetBit(r + 1)) {
+			for (var m : compiled.getReactants(r))
+				reactants.set(m);
+			for (var m : compiled.getProducts(r))
+				products.set(m);
 		}
 
-		buf.append("\nStratification contains %d reactions, %d reactants and %d products\n".formatted(reactions.size(), reactants.size(), products.size()));
+		w.write("\nStratification contains %d reactions, %d reactants and %d products\n".formatted(stratified.cardinality(), reactants.cardinality(), products.cardinality()));
 
-		buf.append("\nUnused food items: %d\n".formatted(reactionSystem.getFoods().stream().filter(f -> !f.getName().equals("$") && !reactants.contains(f)).count()));
-		for (var item : reactionSystem.getFoods()) {
-			if (!item.getName().equals("$") && !reactants.contains(item)) {
-				buf.append("\t").append(item.getName()).append("\n");
-			}
+		var foods = compiled.getFoods();
+		var unusedFoods = compiled.getMolecules(foods).stream().filter(f -> !f.getName().equals("$") && !reactants.get(compiled.getMoleculeId(f))).toList();
+		w.write("\nUnused food items: %d\n".formatted(unusedFoods.size()));
+		for (var item : unusedFoods) {
+			w.write("\t" + item.getName() + "\n");
 		}
 
-		var foodAndProducts = new HashSet<MoleculeType>();
-		foodAndProducts.addAll(reactionSystem.getFoods());
-		foodAndProducts.addAll(products);
+		var foodAndProducts = (BitSet) foods.clone();
+		foodAndProducts.or(products);
 
-		var countUnmentionedReactions = reactionSystem.getReactions().stream().filter(r -> !reactions.contains(r)).count();
+		var countUnmentionedReactions = compiled.getNumberOfReactions() - stratified.cardinality();
 
-		buf.append("\nUnmentioned reactions: %d\n".formatted(countUnmentionedReactions));
-		if (countUnmentionedReactions > 0) {
-			for (var reaction : reactionSystem.getReactions()) {
-				if (!reactions.contains(reaction)) {
-					buf.append("\t").append(reaction.getName());
+		w.write("\nUnmentioned reactions: %d\n".formatted(countUnmentionedReactions));
+		for (var r = stratified.nextClearBit(0); r < compiled.getNumberOfReactions(); r = stratified.nextClearBit(r + 1)) {
+			w.write("\t" + compiled.getReaction(r).getName());
 
-					var missingReactants = new TreeSet<>(reaction.getReactants());
-					missingReactants.removeAll(foodAndProducts);
+			var missingReactants = getMissing(compiled, compiled.getReactants(r), foodAndProducts);
+			var missingProducts = getMissing(compiled, compiled.getProducts(r), foodAndProducts);
 
-					var missingProducts = new TreeSet<>(reaction.getProducts());
-					missingProducts.removeAll(foodAndProducts);
-
-					if (!missingReactants.isEmpty() || !missingProducts.isEmpty()) {
-						buf.append("\t(");
-						if (!missingReactants.isEmpty()) {
-							buf.append("missing reactants: %s, ".formatted(StringUtils.toString(missingReactants, ", ")));
-						}
+			if (!missingReactants.isEmpty() || !missingProducts.isEmpty()) {
+				w.write("\t(");
+				if (!missingReactants.isEmpty()) {
+					w.write("missing reactants: %s, ".formatted(StringUtils.toString(missingReactants, ", ")));
+				}
 
-						if (!missingProducts.isEmpty()) {
-							buf.append(" missing products: %s".formatted(StringUtils.toString(missingProducts, ", ")));
-						}
-						buf.append(")");
-					}
-					buf.append("\n");
+				if (!missingProducts.isEmpty()) {
+					w.write(" missing products: %s".formatted(StringUtils.toString(missingProducts, ", ")));
 				}
+				w.write(")");
 			}
+			w.write("\n");
 		}
-		return buf.toString();
+		w.flush();
+	}
+
+	/**
+	 * gets the molecules that are not contained in the given set, sorted
+	 */
+	private static SortedSet<MoleculeType> getMissing(CompiledReactionSystem compiled, int[] ids, BitSet present) {
+		var missing = new TreeSet<MoleculeType>();
+		for (var m : ids) {
+			if (!present.get(m))
+				missing.add(compiled.getMolecule(m));
+		}
+		return missing;
 	}
 
 	public enum StratificationDetails {ReactionsOnly, ReactionsRequiredMolecules, ReactionsAllMolecules}
 
+	/**
+	 * sets up the stratification graph. Each reaction is connected to the most recently added producer of each of its
+	 * non-food reactants, or, if molecules are shown, to the most recently added node of each of its reactants. The most
+	 * recent producer and node are kept per molecule, so each reaction is processed once
+	 */
 	public static void setupStratificationGraph(Graph graph, ReactionSystem reactionSystem, StratificationDetails details) {
-		var molecules = new HashSet<>(reactionSystem.getFoods());
-		var reactions = new ArrayList<Reaction>();
-		var reactionNodeMap = new HashMap<Reaction, Node>();
+		var compiled = new CompiledReactionSystem(reactionSystem);
+		var foods = compiled.getFoods();
 
-		var moleculeNodes = new ArrayList<Node>();
+		var addedReactions = new ArrayList<Integer>(); // ids of reactions, in order of addition
+		var reactionNodes = new ArrayList<Node>(); // their nodes
+		var latestProducer = new int[compiled.getNumberOfMolecules()]; // index of the most recently added reaction that produces the molecule
+		Arrays.fill(latestProducer, -1);
+
+		var moleculeNodes = new ArrayList<Node>(); // nodes of molecules, in order of addition
+		var latestMoleculeNode = new int[compiled.getNumberOfMolecules()]; // index of the most recently added node of the molecule
+		Arrays.fill(latestMoleculeNode, -1);
 
 		for (var food : reactionSystem.getFoods()) {
-			var v = graph.newNode(food);
-			moleculeNodes.add(v);
+			latestMoleculeNode[compiled.getMoleculeId(food)] = moleculeNodes.size();
+			moleculeNodes.add(graph.newNode(food));
 		}
 		System.err.println("Computing Reaction Stratification Graph (" + details.name() + ")...");
-		while (true) {
-			var pair = computeOneStep(molecules, reactions, reactionSystem.getReactions());
-			var nextReactions = pair.getKey();
-			var nextMolecules = pair.getValue();
-
-			if (nextReactions.isEmpty())
-				break;
+		new ClosureEngine(compiled).computeLevels(compiled.getFoods(), compiled.getAllReactions(), (rank, nextReactionIds, nextMoleculeIds) -> {
+			var nextReactions = nextReactionIds.stream().boxed().sorted(Comparator.comparing(compiled::getReaction)).toList();
+			var nodes = new ArrayList<Node>(nextReactions.size());
 
-			for (var reaction : nextReactions) {
-				var v = graph.newNode(reaction);
-				reactionNodeMap.put(reaction, v);
+			for (var r : nextReactions) {
+				var v = graph.newNode(compiled.getReaction(r));
+				nodes.add(v);
 
-				var remainingReactants = new HashSet<>(reaction.getReactants());
+				// the edges are added from the most recent reaction or molecule node backwards
 				if (details == StratificationDetails.ReactionsOnly) {
-					remainingReactants.removeAll(reactionSystem.getFoods());
-					while (!remainingReactants.isEmpty()) {
-						for (var j = reactions.size() - 1; j >= 0; j--) {
-							var other = reactions.get(j);
-							if (SetUtils.intersect(other.getReactants(), remainingReactants)) {
-								remainingReactants.removeAll(other.getReactants());
-								var w = reactionNodeMap.get(other);
-								graph.newEdge(w, v, EdgeType.Association);
-							}
+					var remainingReactants = new BitSet();
+					var sources = new TreeSet<Integer>(Comparator.reverseOrder());
+					for (var m : compiled.getReactants(r)) {
+						if (!foods.get(m) && latestProducer[m] != -1) {
+							remainingReactants.set(m);
+							sources.add(latestProducer[m]);
 						}
 					}
-				} else {
-					while (!remainingReactants.isEmpty()) {
-						for (var j = moleculeNodes.size() - 1; j >= 0; j--) {
-							var w = moleculeNodes.get(j);
-							if (w.getInfo() instanceof MoleculeType molecule && remainingReactants.contains(molecule)) {
-								graph.newEdge(w, v, EdgeType.Association);
-								remainingReactants.remove(molecule);
+					for (var j : sources) {
+						var covers = false;
+						for (var m : compiled.getProducts(addedReactions.get(j))) {
+							if (remainingReactants.get(m)) {
+								remainingReactants.clear(m);
+								covers = true;
 							}
 						}
+						if (covers)
+							graph.newEdge(reactionNodes.get(j), v, EdgeType.Association);
+					}
+				} else {
+					var sources = new TreeSet<Integer>(Comparator.reverseOrder());
+					for (var m : compiled.getReactants(r)) {
+						if (latestMoleculeNode[m] != -1)
+							sources.add(latestMoleculeNode[m]);
+					}
+					for (var j : sources) {
+						graph.newEdge(moleculeNodes.get(j), v, EdgeType.Association);
 					}
 				}
 			}
 
-			for (var nr : nextReactions) {
-				var v = reactionNodeMap.get(nr);
-
-				for (var product : nr.getProducts()) {
+			for (var i = 0; i < nextReactions.size(); i++) {
+				var v = nodes.get(i);
+				int r = nextReactions.get(i);
+				for (var product : compiled.getReaction(r).getProducts()) {
 					var w = graph.newNode(product);
+					latestMoleculeNode[compiled.getMoleculeId(product)] = moleculeNodes.size();
 					moleculeNodes.add(w);
 					graph.newEdge(v, w, EdgeType.Association);
 				}
+				for (var m : compiled.getProducts(r)) {
+					latestProducer[m] = reactionNodes.size();
+				}
+				reactionNodes.add(v);
+				addedReactions.add(r);
 			}
-			reactions.addAll(nextReactions);
-			molecules.addAll(nextMolecules);
-		}
+		});
 
 		if (details == StratificationDetails.ReactionsRequiredMolecules) {
 			var toDelete = graph.nodeStream().filter(v -> v.getInfo() instanceof MoleculeType && v.getInDegree() > 0 && v.getOutDegree() == 0).toList();
@@ -196,31 +227,4 @@ public class Stratification {
 
 		System.err.printf("Nodes: %d, Edges: %d%n", graph.getNumberOfNodes(), graph.getNumberOfEdges());
 	}
-
-	public static Pair<Set<Reaction>, Set<MoleculeType>> computeOneStep(Collection<MoleculeType> molecules, Collection<Reaction> reactions, Collection<Reaction> inputReactions) {
-		var nextReactions = new TreeSet<Reaction>();
-		var nextMolecules = new TreeSet<MoleculeType>();
-
-		for (var reaction : inputReactions) {
-			if (!reactions.contains(reaction)) {
-				if ((reaction.getDirection() == Reaction.Direction.forward || reaction.getDirection() == Reaction.Direction.both) && molecules.containsAll(reaction.getReactants())) {
-					nextReactions.add(reaction);
-					for (var molecule : reaction.getProducts()) {
-						if (!molecules.contains(molecule)) {
-							nextMolecules.add(molecule);
-						}
-					}
-				}
-				if ((reaction.getDirection() == Reaction.Direction.reverse || reaction.getDirection() == Reaction.Direction.both) && molecules.containsAll(reaction.getProducts())) {
-					nextReactions.add(reaction);
-					for (var molecule : reaction.getReactants()) {
-						if (!molecules.contains(molecule)) {
-							nextMolecules.add(molecule);
-						}
-					}
-				}
-			}
-		}
-		return new Pair<>(nextReactions, nextMolecules);
-	}
 }
@@ -47,6 +47,14 @@ public class StrictlyAutocatalyticMaxRAFAlgorithm extends AlgorithmBase {
         return "computes a Max RAF that has the additional property that any contained reaction requires at least one molecule type for catalyzation that is not in the food set [HXRS23]";
     }
 
+    /**
+     * the output is determined by the input, so may be cached
+     */
+    @Override
+    public String getCacheParameters() {
+        return "";
+    }
+
     /**
      * computes the partially autocatalytic Max RAF.
      * Ignore all inhibitions.
@@ -92,7 +100,7 @@ public class StrictlyAutocatalyticMaxRAFAlgorithm extends AlgorithmBase {
                     var nextReactions = reactions.get(i);
                     for (var reaction : previousReactions) {
                         if (closure.containsAll(reaction.getReactants())) {
-                            if (Arrays.stream(reaction.getCatalysts().split("[,&\\s]")).anyMatch(c -> closureWithoutFood.contains(MoleculeType.valueOf(c)))) {
+                            if (Arrays.stream(reaction.getCatalysts().split("[,&\\s]")).anyMatch(c -> closureWithoutFood.contains(input.getMoleculeTypePool().valueOf(c)))) {
                                 nextReactions.add(reaction);
                                 nextMolecules.addAll(inputFood);
                                 nextMolecules.addAll(reaction.getProducts());
@@ -105,8 +113,8 @@ public class StrictlyAutocatalyticMaxRAFAlgorithm extends AlgorithmBase {
                 while (reactions.get(i).size() < reactions.get(i - 1).size());
 
                 if (reactions.get(i).size() > 0) {
-                    result.getReactions().setAll(reactions.get(i));
-                    result.getFoods().setAll(result.computeMentionedFoods(input.getFoods()));
+                    result.setReactions(reactions.get(i));
+                    result.setFoods(result.computeMentionedFoods(input.getFoods()));
                 }
             }
             return result;
@@ -121,7 +129,7 @@ public class StrictlyAutocatalyticMaxRAFAlgorithm extends AlgorithmBase {
                     for (var cat : reaction.getCatalysts().split("[,\\s]")) {
                         cat = cat.trim();
                         for (var part : StringUtils.split(cat, '&')) {
-                            if (!inputFood.contains(MoleculeType.valueOf(part))) {
+                            if (!inputFood.contains(input.getMoleculeTypePool().valueOf(part))) {
                                 ok = true;
                                 break loop;
                             }
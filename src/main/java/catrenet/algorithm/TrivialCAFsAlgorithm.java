@@ -19,13 +19,11 @@
 
 package catrenet.algorithm;
 
-import catrenet.model.Reaction;
+import catrenet.model.CompiledReactionSystem;
 import catrenet.model.ReactionSystem;
 import jloda.util.CanceledException;
 import jloda.util.progress.ProgressListener;
 
-import java.util.stream.Collectors;
-
 /**
  * determines all trivial RAFs, i.e. irreducible one-element CAFs
  * Daniel Huson, 4.2020
@@ -38,6 +36,14 @@ public class TrivialCAFsAlgorithm extends AlgorithmBase {
         return "computes all reactions that can run using only the food set";
     }
 
+    /**
+     * the output is determined by the input, so may be cached
+     */
+    @Override
+    public String getCacheParameters() {
+        return "";
+    }
+
     @Override
     public String getName() {
         return Name;
@@ -48,17 +54,17 @@ public class TrivialCAFsAlgorithm extends AlgorithmBase {
      *
      * @param input - unexpanded catalytic reaction system
      */
-
     public ReactionSystem apply(ReactionSystem input, ProgressListener progress) throws CanceledException {
-        final ReactionSystem result = new ReactionSystem(Name);
+        return apply(new CompiledReactionSystem(input), progress);
+    }
 
-        result.getReactions().addAll(
-                input.getReactions().parallelStream().filter(r ->
-                        ((r.getDirection() == Reaction.Direction.forward || r.getDirection() == Reaction.Direction.both)) &&
-                                r.isCatalyzedAndUninhibitedAndHasAllReactants(input.getFoods(), Reaction.Direction.forward)
-                                || ((r.getDirection() == Reaction.Direction.reverse || r.getDirection() == Reaction.Direction.both)) &&
-                                r.isCatalyzedAndUninhibitedAndHasAllReactants(input.getFoods(), Reaction.Direction.reverse)).collect(Collectors.toList()));
-        result.getFoods().setAll(result.computeMentionedFoods(input.getFoods()));
-        return result;
+    /**
+     * compute all reactions that can run using only the food set, compiled version
+     *
+     * @param input - compiled catalytic reaction system
+     */
+    @Override
+    public ReactionSystem apply(CompiledReactionSystem input, ProgressListener progress) throws CanceledException {
+        return input.toReactionSystem(Name, Utilities.filterReactions(input, input.getFoods(), input.getAllReactions()));
     }
 }
@@ -19,12 +19,11 @@
 
 package catrenet.algorithm;
 
-import catrenet.model.Reaction;
+import catrenet.model.CompiledReactionSystem;
 import catrenet.model.ReactionSystem;
-import jloda.util.CollectionUtils;
 import jloda.util.progress.ProgressListener;
 
-import java.util.stream.Collectors;
+import java.util.BitSet;
 
 /**
  * determines all reactions that can run using only the input food set
@@ -44,22 +43,49 @@ public class TrivialRAFsAlgorithm extends AlgorithmBase {
 		return "computes all reactions that can run using only the food set, where the catalyst need not be in the food set if the reaction produces it";
 	}
 
+	/**
+	 * the output is determined by the input, so may be cached
+	 */
+	@Override
+	public String getCacheParameters() {
+		return "";
+	}
+
 	/**
      * compute all reactions that can run using only the food set
      *
      * @param input - unexpanded catalytic reaction system
      */
     public ReactionSystem apply(ReactionSystem input, ProgressListener progress) {
-        final ReactionSystem result = new ReactionSystem(Name);
+        return apply(new CompiledReactionSystem(input), progress);
+    }
+
+    /**
+     * compute all reactions that can run using only the food set, compiled version
+     *
+     * @param input - compiled catalytic reaction system
+     */
+    @Override
+    public ReactionSystem apply(CompiledReactionSystem input, ProgressListener progress) {
+        final var foods = input.getFoods();
+        final var reactions = new BitSet();
 
-        result.getReactions().addAll(
-                input.getReactions().parallelStream()
-                        .filter(r -> ((r.getDirection() == Reaction.Direction.forward || r.getDirection() == Reaction.Direction.both) &&
-									  r.isCatalyzedAndUninhibitedAndHasAllReactants(input.getFoods(), CollectionUtils.union(input.getFoods(), r.getProducts()), input.getFoods(), Reaction.Direction.forward))
-									 || ((r.getDirection() == Reaction.Direction.reverse || r.getDirection() == Reaction.Direction.both) &&
-										 r.isCatalyzedAndUninhibitedAndHasAllReactants(input.getFoods(), CollectionUtils.union(input.getFoods(), r.getReactants()), input.getFoods(), Reaction.Direction.reverse)))
-                        .collect(Collectors.toList()));
-        result.getFoods().setAll(result.computeMentionedFoods(input.getFoods()));
-        return result;
+        for (var r = 0; r < input.getNumberOfReactions(); r++) {
+            if (!input.isInhibited(r, foods)
+                && ((input.isForward(r) && CompiledReactionSystem.containsAll(foods, input.getReactants(r)) && isCatalyzed(input, r, foods, input.getProducts(r)))
+                    || (input.isReverse(r) && CompiledReactionSystem.containsAll(foods, input.getProducts(r)) && isCatalyzed(input, r, foods, input.getReactants(r)))))
+                reactions.set(r);
+        }
+        return input.toReactionSystem(Name, reactions);
+    }
+
+    /**
+     * is the reaction catalyzed by the food and its own products?
+     */
+    private static boolean isCatalyzed(CompiledReactionSystem input, int r, BitSet foods, int[] products) {
+        final var foodAndProducts = (BitSet) foods.clone();
+        for (var m : products)
+            foodAndProducts.set(m);
+        return input.isCatalyzed(r, foodAndProducts);
     }
 }
@@ -42,6 +42,14 @@ public class URAFAlgorithm extends AlgorithmBase {
         return "computes a max RAF, removes inhibited reactions, and then recomputes the max RAF (Section 6 of [HMS16])";
     }
 
+    /**
+     * the output is determined by the input, so may be cached
+     */
+    @Override
+    public String getCacheParameters() {
+        return "";
+    }
+
     /**
      * computes a canonical uninhibited RAF (U RAF)
      *
@@ -49,13 +57,23 @@ public class URAFAlgorithm extends AlgorithmBase {
      * @return U RAF or empty set
      */
     public ReactionSystem apply(ReactionSystem input, ProgressListener progress) throws CanceledException {
+        return apply(new AnalysisContext(input), progress);
+    }
+
+    /**
+     * computes a canonical uninhibited RAF (U RAF), using the max RAF of the context
+     *
+     * @return U RAF or empty set
+     */
+    @Override
+    public ReactionSystem apply(AnalysisContext context, ProgressListener progress) throws CanceledException {
         var result = new ReactionSystem();
         result.setName(Name);
 
         // 1. Compute R'= maxRAF(X, R, C, \emptyset, F) for input Q
 
         progress.setSubtask("MaxRAF R1");
-        var R1 = new MaxRAFAlgorithm().apply(input, progress); // this algorithm ignores all inhibitions
+        var R1 = context.getMaxRAF(progress); // this algorithm ignores all inhibitions
 
         // 2. If R' == emptyset return nil, else let R'' be the subset of reaction r\in  R' for which r is not inhibited by the product of any reaction  in R' or by any element of the foodset.
         if (R1.size() == 0)
@@ -67,7 +85,7 @@ public class URAFAlgorithm extends AlgorithmBase {
         progress.setSubtask("Setup R2");
         progress.setMaximum(R1.getReactions().size());
         var R2 = new ReactionSystem("R2");
-        R2.getFoods().setAll(R1.getFoods());
+        R2.setFoods(R1.getFoods());
         for (var reaction : R1.getReactions()) {
             if (!SetUtils.intersect(reaction.getInhibitions(), foodSetAndProductions))
                 R2.getReactions().add(reaction);
@@ -19,6 +19,7 @@
 
 package catrenet.algorithm;
 
+import catrenet.model.CompiledReactionSystem;
 import catrenet.model.MoleculeType;
 import catrenet.model.Reaction;
 
@@ -51,19 +52,45 @@ public class Utilities {
      * @return extended food set
      */
     public static Set<MoleculeType> computeClosure(Collection<MoleculeType> molecules, Collection<Reaction> reactions) {
-        final Set<MoleculeType> allMolecules = new TreeSet<>(molecules);
-        int size;
-        do {
-            size = allMolecules.size();
-            allMolecules.addAll(reactions.stream().filter(r -> r.getDirection() == Reaction.Direction.forward || r.getDirection() == Reaction.Direction.both).
-                    filter(r -> allMolecules.containsAll(r.getReactants())).map(Reaction::getProducts).flatMap(Collection::stream).collect(Collectors.toList()));
-            allMolecules.addAll(reactions.stream().filter(r -> r.getDirection() == Reaction.Direction.reverse || r.getDirection() == Reaction.Direction.both).
-                    filter(r -> allMolecules.containsAll(r.getProducts())).map(Reaction::getReactants).flatMap(Collection::stream).collect(Collectors.toList()));
-        }
-        while (allMolecules.size() > size);
+        final var compiled = new CompiledReactionSystem(molecules, reactions);
+        final var allMolecules = new TreeSet<>(molecules);
+        allMolecules.addAll(compiled.getMolecules(computeClosure(compiled, compiled.getFoods(), compiled.getAllReactions())));
         return allMolecules;
     }
 
+    /**
+     * add molecules mentioned as products to the given set of existing molecules, compiled version
+     *
+     * @param molecules existing molecules
+     * @param reactions reactions whose products are added
+     * @return extended food set
+     */
+    public static BitSet addAllMentionedProducts(CompiledReactionSystem compiled, BitSet molecules, BitSet reactions) {
+        final var result = (BitSet) molecules.clone();
+        for (var r = reactions.nextSetBit(0); r >= 0; r = reactions.nextSetBit(r + 1)) {
+            if (compiled.isForward(r)) {
+                for (var m : compiled.getProducts(r))
+                    result.set(m);
+            }
+            if (compiled.isReverse(r)) {
+                for (var m : compiled.getReactants(r))
+                    result.set(m);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * gets the closure of the set of molecules with respect to the set of reactions, ignoring catalysts and inhibitors, compiled version
+     *
+     * @param molecules existing molecules
+     * @param reactions reactions to use
+     * @return extended food set
+     */
+    public static BitSet computeClosure(CompiledReactionSystem compiled, BitSet molecules, BitSet reactions) {
+        return new ClosureEngine(compiled).computeClosure(molecules, reactions);
+    }
+
     /**
      * filter reactions to only keep those that can be run given the current food
      *
@@ -74,38 +101,31 @@ public class Utilities {
     }
 
     /**
-     * for a given food set and set of reactions, returns all reactions that are F-generated (ignoring catalysts and inhibitors
+     * filter reactions to only keep those that can be run given the current food, compiled version
+     *
+     * @return filtered reactions
+     */
+    public static BitSet filterReactions(CompiledReactionSystem compiled, BitSet food, BitSet reactions) {
+        final var result = new BitSet();
+        for (var r = reactions.nextSetBit(0); r >= 0; r = reactions.nextSetBit(r + 1)) {
+            if (compiled.isCatalyzedAndUninhibitedAndHasAllReactants(r, food))
+                result.set(r);
+        }
+        return result;
+    }
+
+    /**
+     * for a given food set and set of reactions, returns all reactions that are F-generated (ignoring catalysts and inhibitors),
+     * in input order
      *
      * @param foods     the food set
      * @param reactions the input reactions
      * @return the F-generated reactions
      */
     public static List<Reaction> computeFGenerated(List<MoleculeType> foods, List<Reaction> reactions) {
-        var availableFood = new HashSet<>(foods);
-        var availableReactions = new ArrayList<>(reactions);
-        var closure = new ArrayList<Reaction>();
-        while (true) {
-            var toAdd = availableReactions.stream().filter(r -> r.isHasAllReactants(availableFood, r.getDirection())).collect(Collectors.toList());
-            if (toAdd.size() > 0) {
-                closure.addAll(toAdd);
-                for (var r : toAdd) {
-                    availableFood.addAll(switch (r.getDirection()) {
-                        case forward -> r.getProducts();
-                        case reverse -> r.getReactants();
-                        case both -> {
-                            var result = new ArrayList<MoleculeType>();
-                            if (availableFood.containsAll(r.getReactants()))
-                                result.addAll(r.getProducts());
-                            if (availableFood.containsAll(r.getProducts()))
-                                result.addAll(r.getReactants());
-                            yield result;
-                        }
-                    });
-                }
-                availableReactions.removeAll(toAdd);
-            } else
-                break;
-        }
-        return closure;
+        final var compiled = new CompiledReactionSystem(foods, reactions);
+        final var generated = new BitSet();
+        new ClosureEngine(compiled).computeClosure(compiled.getFoods(), compiled.getAllReactions(), generated);
+        return compiled.getReactions(generated);
     }
 }
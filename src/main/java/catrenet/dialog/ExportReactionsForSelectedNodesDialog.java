@@ -24,7 +24,6 @@ import catrenet.model.Reaction;
 import catrenet.model.ReactionSystem;
 import catrenet.window.MainWindow;
 import jloda.util.CollectionUtils;
-import jloda.util.StringUtils;
 
 import java.util.HashSet;
 
@@ -44,7 +43,7 @@ public class ExportReactionsForSelectedNodesDialog {
             if (v.getInfo() instanceof Reaction r) {
                 food.addAll(r.getReactants());
 				food.addAll(r.getProducts());
-				r.getCatalystConjunctions().forEach(c -> food.addAll(MoleculeType.valuesOf(StringUtils.split(c.getName(), '&'))));
+				food.addAll(r.getCatalystElements());
 				food.addAll(r.getInhibitions());
                 output.getReactions().add(r);
             } else if (v.getInfo() instanceof MoleculeType) {
@@ -74,7 +74,7 @@ public class ExportList {
 
         final ObservableSet<String> reactionNames = FXCollections.observableSet(new TreeSet<>());
 
-        final ReactionSystem inputReactions = window.getInputReactionSystem();
+        final var inputReactions = window.getInputReactionSystem();
 
 		controller.getReactionsTextArea().textProperty().addListener(c -> {
 			final Set<String> set = new HashSet<>(StringUtils.getLinesFromString(controller.getReactionsTextArea().getText()));
@@ -93,8 +93,8 @@ public class ExportList {
         controller.getCancelButton().setOnAction(c -> stage.close());
         controller.getExportButton().setOnAction(c -> {
             final ReactionSystem result = new ReactionSystem("extracted");
-            result.getReactions().setAll(inputReactions.getReactions().filtered(r -> reactionNames.contains(r.getName()) == controller.getKeepRadioButton().isSelected()));
-            result.getFoods().setAll(result.computeMentionedFoods(inputReactions.getFoods()));
+            result.setReactions(inputReactions.getReactions().filtered(r -> reactionNames.contains(r.getName()) == controller.getKeepRadioButton().isSelected()));
+            result.setFoods(result.computeMentionedFoods(inputReactions.getFoods()));
 			ExportReactionsFileDialog.apply(window, result);
         });
         controller.getExportButton().disableProperty().bind(Bindings.isEmpty(reactionNames));
@@ -20,6 +20,7 @@
 package catrenet.io;
 
 import catrenet.model.MoleculeType;
+import catrenet.model.MoleculeTypePool;
 import catrenet.model.Reaction;
 import catrenet.model.ReactionSystem;
 import catrenet.settings.ArrowNotation;
@@ -43,7 +44,7 @@ import static catrenet.io.LineRec.FOOD_BLOCK_START_P;
  * Daniel Huson, 7.2019
  */
 public class ModelIO {
-	public static final MoleculeType FORMAL_FOOD = MoleculeType.valueOf("$");
+	public static final MoleculeType FORMAL_FOOD = MoleculeTypePool.getGlobal().valueOf("$");
 
 	/**
 	 * read a CRS
@@ -165,13 +166,13 @@ public class ModelIO {
 		final var auxReactions = new HashSet<Reaction>();
 
 		if (!foodItems.isEmpty()) {
-			reactionSystem.getFoods().addAll(foodItems.stream().filter(f -> !f.isEmpty()).map(MoleculeType::valueOf).collect(Collectors.toSet()));
+			reactionSystem.getFoods().addAll(foodItems.stream().filter(f -> !f.isEmpty()).map(reactionSystem.getMoleculeTypePool()::valueOf).collect(Collectors.toSet()));
 		}
 
 		if (!reactionLines.isEmpty()) {
 			for (var reactionLine : reactionLines) {
 				if (!reactionLine.isBlank()) {
-					var reaction = Reaction.parse(reactionLine, auxReactions, reactionNotation.equals(ReactionNotation.Tabbed));
+					var reaction = Reaction.parse(reactionLine, auxReactions, reactionNotation.equals(ReactionNotation.Tabbed), reactionSystem.getMoleculeTypePool());
 					if (reactionNames.contains(reaction.getName()))
 						throw new IOException("Multiple reactions have the same name: " + reaction.getName());
 					reactionSystem.getReactions().add(reaction);
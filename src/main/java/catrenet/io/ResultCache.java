@@ -0,0 +1,379 @@
+/*
+ *  ResultCache.java Copyright (C) 2025 Daniel H. Huson
+ *
+ *  (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package catrenet.io;
+
+import catrenet.main.Version;
+import catrenet.model.MoleculeType;
+import catrenet.model.Reaction;
+import catrenet.model.ReactionSystem;
+import catrenet.settings.ArrowNotation;
+import catrenet.settings.ReactionNotation;
+import catrenet.view.EdgeType;
+import jloda.graph.Graph;
+import jloda.graph.Node;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * persistent cache of computed results, such as algorithm outputs, importance tables and dependency graphs, stored in a
+ * local SQLite file. Results are stored as text and are keyed by a hash of the content of the input reaction system,
+ * together with the name and parameters of the computation. When the total size of all stored results exceeds the
+ * maximum size, the least recently used results are removed. All results are removed when the cache is opened by a
+ * different version of the program.
+ * All errors are reported and otherwise ignored, in which case the result is simply recomputed
+ */
+public class ResultCache {
+	public static final long DEFAULT_MAX_SIZE = 256L * 1024 * 1024;
+	/**
+	 * change this whenever the format of stored results changes
+	 */
+	public static final int CACHE_FORMAT_VERSION = 1;
+
+	private static ResultCache instance;
+
+	private final long maxSize;
+	private Connection connection;
+	private long lastUsed;
+
+	/**
+	 * gets the cache stored in the default file
+	 *
+	 * @return cache
+	 */
+	public static synchronized ResultCache getInstance() {
+		if (instance == null)
+			instance = new ResultCache(getDefaultFile(), DEFAULT_MAX_SIZE);
+		return instance;
+	}
+
+	public static String getDefaultFile() {
+		if (System.getProperty("os.name").toLowerCase().startsWith("mac"))
+			return System.getProperty("user.home") + "/Library/Caches/CatReNet-results.db";
+		else
+			return System.getProperty("user.home") + File.separator + ".CatReNet-results.db";
+	}
+
+	/**
+	 * opens or creates a cache
+	 *
+	 * @param fileName the SQLite file
+	 * @param maxSize  maximum total size of all stored results, in characters
+	 */
+	public ResultCache(String fileName, long maxSize) {
+		this.maxSize = maxSize;
+		try {
+			connection = DriverManager.getConnection("jdbc:sqlite:" + fileName);
+			try (var statement = connection.createStatement()) {
+				statement.execute("PRAGMA busy_timeout=5000");
+				statement.execute("CREATE TABLE IF NOT EXISTS metadata (name TEXT PRIMARY KEY, value TEXT NOT NULL)");
+				String version = null;
+				try (var resultSet = statement.executeQuery("SELECT value FROM metadata WHERE name='version'")) {
+					if (resultSet.next())
+						version = resultSet.getString(1);
+				}
+				if (!getVersion().equals(version)) {
+					// results of another version of the program or the cache might differ, so remove them all
+					statement.execute("DROP TABLE IF EXISTS results");
+					try (var insert = connection.prepareStatement("INSERT OR REPLACE INTO metadata (name, value) VALUES ('version', ?)")) {
+						insert.setString(1, getVersion());
+						insert.executeUpdate();
+					}
+				}
+				statement.execute("CREATE TABLE IF NOT EXISTS results (key TEXT PRIMARY KEY, value TEXT NOT NULL, size INTEGER NOT NULL, used INTEGER NOT NULL)");
+				statement.execute("CREATE INDEX IF NOT EXISTS results_used ON results (used)");
+				try (var resultSet = statement.executeQuery("SELECT COALESCE(MAX(used), 0) FROM results")) {
+					lastUsed = (resultSet.next() ? resultSet.getLong(1) : 0);
+				}
+			}
+		} catch (SQLException ex) {
+			System.err.println("Result cache not available: " + ex.getMessage());
+			connection = null;
+		}
+	}
+
+	/**
+	 * gets the version of the stored results. Results stored by a different version are removed when the cache is opened
+	 */
+	public static String getVersion() {
+		return CACHE_FORMAT_VERSION + " " + Version.SHORT_DESCRIPTION;
+	}
+
+	/**
+	 * removes all results
+	 */
+	public synchronized void clear() {
+		if (connection != null) {
+			try (var statement = connection.createStatement()) {
+				statement.execute("DELETE FROM results");
+				lastUsed = 0;
+			} catch (SQLException ex) {
+				System.err.println("Result cache: " + ex.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * computes a canonical hash of the reaction system, which does not depend on the order of the food items or reactions
+	 *
+	 * @return SHA-256 hash, as hex string
+	 */
+	public static String computeHash(ReactionSystem reactionSystem) {
+		final var foods = reactionSystem.getFoods().stream().map(MoleculeType::getName).sorted().toList();
+		final var reactions = reactionSystem.getReactions().stream().map(r -> ModelIO.toString(r, ReactionNotation.Full, ArrowNotation.UsesEquals)).sorted().toList();
+		try {
+			final var digest = MessageDigest.getInstance("SHA-256");
+			for (var food : foods) {
+				digest.update(food.getBytes(StandardCharsets.UTF_8));
+				digest.update((byte) '\t');
+			}
+			digest.update((byte) '\n');
+			for (var reaction : reactions) {
+				digest.update(reaction.getBytes(StandardCharsets.UTF_8));
+				digest.update((byte) '\n');
+			}
+			return HexFormat.of().formatHex(digest.digest());
+		} catch (NoSuchAlgorithmException ex) {
+			throw new RuntimeException(ex); // every Java platform supports SHA-256
+		}
+	}
+
+	/**
+	 * computes the key of a result
+	 *
+	 * @param hash       hash of the input, see {@link #computeHash(ReactionSystem)}
+	 * @param name       name of the computation
+	 * @param parameters parameters of the computation
+	 * @return key
+	 */
+	public static String computeKey(String hash, String name, String parameters) {
+		return hash + "\t" + name + "\t" + parameters;
+	}
+
+	/**
+	 * gets a result
+	 *
+	 * @return result or null, if not present
+	 */
+	public synchronized String get(String key) {
+		if (connection != null) {
+			try (var select = connection.prepareStatement("SELECT value FROM results WHERE key=?")) {
+				select.setString(1, key);
+				try (var resultSet = select.executeQuery()) {
+					if (resultSet.next()) {
+						final var value = resultSet.getString(1);
+						try (var update = connection.prepareStatement("UPDATE results SET used=? WHERE key=?")) {
+							update.setLong(1, ++lastUsed);
+							update.setString(2, key);
+							update.executeUpdate();
+						}
+						return value;
+					}
+				}
+			} catch (SQLException ex) {
+				System.err.println("Result cache: " + ex.getMessage());
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * puts a result and then removes the least recently used results, until the total size is at most the max size
+	 */
+	public synchronized void put(String key, String value) {
+		if (connection != null && value.length() <= maxSize) {
+			try {
+				try (var insert = connection.prepareStatement("INSERT OR REPLACE INTO results (key, value, size, used) VALUES (?, ?, ?, ?)")) {
+					insert.setString(1, key);
+					insert.setString(2, value);
+					insert.setLong(3, value.length());
+					insert.setLong(4, ++lastUsed);
+					insert.executeUpdate();
+				}
+				evict();
+			} catch (SQLException ex) {
+				System.err.println("Result cache: " + ex.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * removes the least recently used results, until the total size is at most the max size
+	 */
+	private void evict() throws SQLException {
+		try (var statement = connection.createStatement()) {
+			var total = 0L;
+			try (var resultSet = statement.executeQuery("SELECT COALESCE(SUM(size), 0) FROM results")) {
+				if (resultSet.next())
+					total = resultSet.getLong(1);
+			}
+			if (total > maxSize) {
+				final var toDelete = new ArrayList<String>();
+				try (var resultSet = statement.executeQuery("SELECT key, size FROM results ORDER BY used")) {
+					while (total > maxSize && resultSet.next()) {
+						toDelete.add(resultSet.getString(1));
+						total -= resultSet.getLong(2);
+					}
+				}
+				try (var delete = connection.prepareStatement("DELETE FROM results WHERE key=?")) {
+					for (var key : toDelete) {
+						delete.setString(1, key);
+						delete.addBatch();
+					}
+					delete.executeBatch();
+				}
+			}
+		}
+	}
+
+	/**
+	 * gets a cached reaction system
+	 *
+	 * @return reaction system or null, if not present
+	 */
+	public ReactionSystem getReactionSystem(String key) {
+		final var list = getReactionSystems(key);
+		return (list != null && list.size() == 1 ? list.get(0) : null);
+	}
+
+	public void putReactionSystem(String key, ReactionSystem reactionSystem) {
+		putReactionSystems(key, List.of(reactionSystem));
+	}
+
+	/**
+	 * gets a cached list of reaction systems
+	 *
+	 * @return reaction systems or null, if not present
+	 */
+	public List<ReactionSystem> getReactionSystems(String key) {
+		final var value = get(key);
+		if (value != null) {
+			try {
+				return parseReactionSystems(value);
+			} catch (IOException ex) {
+				System.err.println("Result cache: " + ex.getMessage());
+			}
+		}
+		return null;
+	}
+
+	public void putReactionSystems(String key, Collection<ReactionSystem> reactionSystems) {
+		put(key, toString(reactionSystems));
+	}
+
+	/**
+	 * gets a cached graph
+	 *
+	 * @param nodeInfo maps the name of a node info to the node info
+	 * @return graph or null, if not present
+	 */
+	public Graph getGraph(String key, Function<String, Object> nodeInfo) {
+		final var value = get(key);
+		return (value != null ? parseGraph(value, nodeInfo) : null);
+	}
+
+	public void putGraph(String key, Graph graph) {
+		put(key, toString(graph));
+	}
+
+	/**
+	 * writes reaction systems, each as a line containing the name, a line containing the food items and then one line
+	 * per reaction, followed by an empty line
+	 */
+	private static String toString(Collection<ReactionSystem> reactionSystems) {
+		final var buf = new StringBuilder();
+		for (var reactionSystem : reactionSystems) {
+			buf.append(reactionSystem.getName()).append("\n");
+			buf.append(String.join("\t", reactionSystem.getFoods().stream().map(MoleculeType::getName).toList())).append("\n");
+			for (var reaction : reactionSystem.getReactions()) {
+				buf.append(ModelIO.toString(reaction, ReactionNotation.Full, ArrowNotation.UsesEquals)).append("\n");
+			}
+			buf.append("\n");
+		}
+		return buf.toString();
+	}
+
+	private static List<ReactionSystem> parseReactionSystems(String value) throws IOException {
+		final var list = new ArrayList<ReactionSystem>();
+		final var lines = value.split("\n", -1);
+		var i = 0;
+		while (i + 1 < lines.length) {
+			final var reactionSystem = new ReactionSystem(lines[i++]);
+			final var foods = lines[i++];
+			if (!foods.isEmpty())
+				reactionSystem.getFoods().addAll(Arrays.stream(foods.split("\t")).map(reactionSystem.getMoleculeTypePool()::valueOf).toList());
+			final var auxReactions = new HashSet<Reaction>();
+			while (i < lines.length && !lines[i].isEmpty()) {
+				reactionSystem.getReactions().add(Reaction.parse(lines[i++], auxReactions, false, reactionSystem.getMoleculeTypePool()));
+			}
+			i++;
+			list.add(reactionSystem);
+		}
+		return list;
+	}
+
+	/**
+	 * writes a graph as one line per node, containing the name of the node info, followed by one line per edge,
+	 * containing the numbers of the source and target nodes and the name of the edge type, if any
+	 */
+	private static String toString(Graph graph) {
+		final var buf = new StringBuilder();
+		final var numbers = new HashMap<Node, Integer>();
+		buf.append(graph.getNumberOfNodes()).append("\n");
+		for (var v : graph.nodes()) {
+			numbers.put(v, numbers.size());
+			buf.append(v.getInfo()).append("\n");
+		}
+		for (var e : graph.edges()) {
+			buf.append(numbers.get(e.getSource())).append("\t").append(numbers.get(e.getTarget()));
+			if (e.getInfo() instanceof EdgeType edgeType)
+				buf.append("\t").append(edgeType.name());
+			buf.append("\n");
+		}
+		return buf.toString();
+	}
+
+	private static Graph parseGraph(String value, Function<String, Object> nodeInfo) {
+		final var graph = new Graph();
+		final var lines = value.split("\n");
+		final var nodes = new Node[Integer.parseInt(lines[0])];
+		for (var v = 0; v < nodes.length; v++) {
+			nodes[v] = graph.newNode(nodeInfo.apply(lines[v + 1]));
+		}
+		for (var i = nodes.length + 1; i < lines.length; i++) {
+			final var tokens = lines[i].split("\t");
+			final var source = nodes[Integer.parseInt(tokens[0])];
+			final var target = nodes[Integer.parseInt(tokens[1])];
+			if (tokens.length > 2)
+				graph.newEdge(source, target, EdgeType.valueOf(tokens[2]));
+			else
+				graph.newEdge(source, target);
+		}
+		return graph;
+	}
+}
@@ -0,0 +1,388 @@
+/*
+ *  CompiledReactionSystem.java Copyright (C) 2025 Daniel H. Huson
+ *
+ *  (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package catrenet.model;
+
+import java.util.*;
+
+/**
+ * an integer-indexed representation of a reaction system, built once and used by algorithms.
+ * Molecules and reactions are given dense ids, all sets of molecules or reactions are represented as bit sets
+ */
+public class CompiledReactionSystem {
+	private ReactionSystem reactionSystem;
+	private final MoleculeType[] foodList;
+
+	private final MoleculeType[] molecules;
+	private final Map<MoleculeType, Integer> moleculeIdMap;
+
+	private final Reaction[] reactions;
+	private final Map<String, Integer> reactionIdMap;
+
+	private final boolean[] forward;
+	private final boolean[] reverse;
+	private final int[][] reactants;
+	private final int[][] products;
+	private final int[][][] catalystConjunctions;
+	private final int[][] inhibitions;
+
+	private final BitSet foods;
+
+	private final int[][] reactionsWithReactant;
+	private final int[][] reactionsWithProduct;
+	private final int[][] reactionsWithCatalyst;
+	private final int[][] reactionsWithInhibition;
+
+	/**
+	 * compiles the given reaction system
+	 *
+	 * @param reactionSystem the reaction system, should not be modified while this object is in use
+	 */
+	public CompiledReactionSystem(ReactionSystem reactionSystem) {
+		this(reactionSystem.getFoods(), reactionSystem.getReactions());
+		this.reactionSystem = reactionSystem;
+	}
+
+	/**
+	 * compiles the given food set and reactions
+	 *
+	 * @param foodSet      food molecules
+	 * @param reactionList reactions, should not be modified while this object is in use
+	 */
+	public CompiledReactionSystem(Collection<MoleculeType> foodSet, Collection<Reaction> reactionList) {
+		final var moleculeList = new ArrayList<MoleculeType>();
+		moleculeIdMap = new HashMap<>();
+
+		foodList = foodSet.toArray(new MoleculeType[0]);
+		reactions = reactionList.toArray(new Reaction[0]);
+		reactionIdMap = new HashMap<>();
+
+		final var n = reactions.length;
+		forward = new boolean[n];
+		reverse = new boolean[n];
+		reactants = new int[n][];
+		products = new int[n][];
+		catalystConjunctions = new int[n][][];
+		inhibitions = new int[n][];
+
+		foods = new BitSet();
+		for (var food : foodList) {
+			foods.set(computeIdIfAbsent(food, moleculeList));
+		}
+
+		for (var r = 0; r < n; r++) {
+			final var reaction = reactions[r];
+			reactionIdMap.put(reaction.getName(), r);
+			forward[r] = (reaction.getDirection() == Reaction.Direction.forward || reaction.getDirection() == Reaction.Direction.both);
+			reverse[r] = (reaction.getDirection() == Reaction.Direction.reverse || reaction.getDirection() == Reaction.Direction.both);
+			reactants[r] = toIds(reaction.getReactants(), moleculeList);
+			products[r] = toIds(reaction.getProducts(), moleculeList);
+			inhibitions[r] = toIds(reaction.getInhibitions(), moleculeList);
+			if (reaction.getCatalysts().isEmpty())
+				catalystConjunctions[r] = new int[0][];
+			else {
+				final var conjunctions = reaction.getCatalystConjunctionElements();
+				catalystConjunctions[r] = new int[conjunctions.length][];
+				for (var i = 0; i < conjunctions.length; i++) {
+					catalystConjunctions[r][i] = toIds(Arrays.asList(conjunctions[i]), moleculeList);
+				}
+			}
+		}
+		molecules = moleculeList.toArray(new MoleculeType[0]);
+
+		final var catalystElements = new int[n][];
+		for (var r = 0; r < n; r++) {
+			catalystElements[r] = Arrays.stream(catalystConjunctions[r]).flatMapToInt(Arrays::stream).distinct().toArray();
+		}
+		reactionsWithReactant = invert(reactants, molecules.length);
+		reactionsWithProduct = invert(products, molecules.length);
+		reactionsWithCatalyst = invert(catalystElements, molecules.length);
+		reactionsWithInhibition = invert(inhibitions, molecules.length);
+	}
+
+	private int computeIdIfAbsent(MoleculeType molecule, ArrayList<MoleculeType> moleculeList) {
+		return moleculeIdMap.computeIfAbsent(molecule, m -> {
+			moleculeList.add(m);
+			return moleculeList.size() - 1;
+		});
+	}
+
+	private int[] toIds(Collection<MoleculeType> set, ArrayList<MoleculeType> moleculeList) {
+		return set.stream().mapToInt(m -> computeIdIfAbsent(m, moleculeList)).distinct().sorted().toArray();
+	}
+
+	/**
+	 * for each molecule, determines the reactions that list the molecule
+	 */
+	private static int[][] invert(int[][] reaction2molecules, int numberOfMolecules) {
+		final var counts = new int[numberOfMolecules];
+		for (var list : reaction2molecules) {
+			for (var m : list)
+				counts[m]++;
+		}
+		final var result = new int[numberOfMolecules][];
+		for (var m = 0; m < numberOfMolecules; m++) {
+			result[m] = new int[counts[m]];
+			counts[m] = 0;
+		}
+		for (var r = 0; r < reaction2molecules.length; r++) {
+			for (var m : reaction2molecules[r])
+				result[m][counts[m]++] = r;
+		}
+		return result;
+	}
+
+	/**
+	 * gets the reaction system that this was compiled from. If this was compiled from a collection of reactions, then
+	 * a reaction system containing them is created
+	 *
+	 * @return source reaction system
+	 */
+	public ReactionSystem getReactionSystem() {
+		if (reactionSystem == null) {
+			reactionSystem = new ReactionSystem();
+			reactionSystem.setFoods(Arrays.asList(foodList));
+			reactionSystem.setReactions(Arrays.asList(reactions));
+		}
+		return reactionSystem;
+	}
+
+	public int getNumberOfMolecules() {
+		return molecules.length;
+	}
+
+	public int getNumberOfReactions() {
+		return reactions.length;
+	}
+
+	public MoleculeType getMolecule(int m) {
+		return molecules[m];
+	}
+
+	/**
+	 * gets the id of a molecule
+	 *
+	 * @return id or -1, if molecule not mentioned in the reaction system
+	 */
+	public int getMoleculeId(MoleculeType molecule) {
+		return moleculeIdMap.getOrDefault(molecule, -1);
+	}
+
+	public Reaction getReaction(int r) {
+		return reactions[r];
+	}
+
+	/**
+	 * gets the id of a reaction
+	 *
+	 * @return id or -1, if reaction not contained in the reaction system
+	 */
+	public int getReactionId(Reaction reaction) {
+		return reactionIdMap.getOrDefault(reaction.getName(), -1);
+	}
+
+	public boolean isForward(int r) {
+		return forward[r];
+	}
+
+	public boolean isReverse(int r) {
+		return reverse[r];
+	}
+
+	public int[] getReactants(int r) {
+		return reactants[r];
+	}
+
+	public int[] getProducts(int r) {
+		return products[r];
+	}
+
+	/**
+	 * gets the catalyst conjunctions of a reaction. An empty array indicates that the reaction does not require a catalyst
+	 *
+	 * @return conjunctions of molecule ids
+	 */
+	public int[][] getCatalystConjunctions(int r) {
+		return catalystConjunctions[r];
+	}
+
+	public int[] getInhibitions(int r) {
+		return inhibitions[r];
+	}
+
+	public int[] getReactionsWithReactant(int m) {
+		return reactionsWithReactant[m];
+	}
+
+	public int[] getReactionsWithProduct(int m) {
+		return reactionsWithProduct[m];
+	}
+
+	public int[] getReactionsWithCatalyst(int m) {
+		return reactionsWithCatalyst[m];
+	}
+
+	public int[] getReactionsWithInhibition(int m) {
+		return reactionsWithInhibition[m];
+	}
+
+	/**
+	 * gets the food set
+	 *
+	 * @return new bit set containing the ids of all food molecules
+	 */
+	public BitSet getFoods() {
+		return (BitSet) foods.clone();
+	}
+
+	/**
+	 * gets all reactions
+	 *
+	 * @return new bit set containing the ids of all reactions
+	 */
+	public BitSet getAllReactions() {
+		final var all = new BitSet();
+		all.set(0, reactions.length);
+		return all;
+	}
+
+	/**
+	 * does the reaction have all reactants (or all products, if it runs in reverse direction)?
+	 */
+	public boolean isHasAllReactants(int r, BitSet molecules) {
+		return (forward[r] && containsAll(molecules, reactants[r])) || (reverse[r] && containsAll(molecules, products[r]));
+	}
+
+	/**
+	 * is the reaction catalyzed by the given molecules?
+	 */
+	public boolean isCatalyzed(int r, BitSet molecules) {
+		if (catalystConjunctions[r].length == 0)
+			return true;
+		for (var conjunction : catalystConjunctions[r]) {
+			if (containsAll(molecules, conjunction))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * is the reaction inhibited by any of the given molecules?
+	 */
+	public boolean isInhibited(int r, BitSet molecules) {
+		for (var m : inhibitions[r]) {
+			if (molecules.get(m))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * compiled equivalent of {@link Reaction#isCatalyzedAndUninhibitedAndHasAllReactants(Collection, Reaction.Direction)}
+	 */
+	public boolean isCatalyzedAndUninhibitedAndHasAllReactants(int r, BitSet molecules) {
+		return isHasAllReactants(r, molecules) && isCatalyzed(r, molecules) && !isInhibited(r, molecules);
+	}
+
+	/**
+	 * does the bit set contain all the given ids?
+	 */
+	public static boolean containsAll(BitSet set, int[] ids) {
+		for (var id : ids) {
+			if (!set.get(id))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * gets the reactions for the given ids, in order of ids
+	 *
+	 * @return reactions
+	 */
+	public List<Reaction> getReactions(BitSet reactionIds) {
+		final var list = new ArrayList<Reaction>(reactionIds.cardinality());
+		reactionIds.stream().forEach(r -> list.add(reactions[r]));
+		return list;
+	}
+
+	/**
+	 * gets the molecules for the given ids, in order of ids
+	 *
+	 * @return molecules
+	 */
+	public List<MoleculeType> getMolecules(BitSet moleculeIds) {
+		final var list = new ArrayList<MoleculeType>(moleculeIds.cardinality());
+		moleculeIds.stream().forEach(m -> list.add(molecules[m]));
+		return list;
+	}
+
+	/**
+	 * gets the ids for the given molecules, ignoring any molecules not mentioned in the reaction system
+	 *
+	 * @return molecule ids
+	 */
+	public BitSet getMoleculeIds(Collection<MoleculeType> molecules) {
+		final var set = new BitSet();
+		for (var molecule : molecules) {
+			final var m = getMoleculeId(molecule);
+			if (m != -1)
+				set.set(m);
+		}
+		return set;
+	}
+
+	/**
+	 * gets all food molecules that are mentioned by any of the given reactions, in the order of the input food list
+	 *
+	 * @return mentioned food molecules
+	 */
+	public List<MoleculeType> getMentionedFoods(BitSet reactionIds) {
+		final var mentioned = new BitSet();
+		reactionIds.stream().forEach(r -> {
+			for (var m : reactants[r])
+				mentioned.set(m);
+			for (var m : products[r])
+				mentioned.set(m);
+			for (var m : inhibitions[r])
+				mentioned.set(m);
+			for (var conjunction : catalystConjunctions[r]) {
+				for (var m : conjunction)
+					mentioned.set(m);
+			}
+		});
+		return Arrays.stream(foodList).filter(f -> mentioned.get(moleculeIdMap.get(f))).toList();
+	}
+
+	/**
+	 * creates a new reaction system containing the given reactions and all food that they mention
+	 *
+	 * @param name        name of the new reaction system
+	 * @param reactionIds reactions to use
+	 * @return new reaction system
+	 */
+	public ReactionSystem toReactionSystem(String name, BitSet reactionIds) {
+		final var result = new ReactionSystem(name);
+		if (!reactionIds.isEmpty()) {
+			result.setReactions(getReactions(reactionIds));
+			result.setFoods(getMentionedFoods(reactionIds));
+		}
+		return result;
+	}
+}
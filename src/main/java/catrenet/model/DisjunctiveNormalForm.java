@@ -19,103 +19,270 @@
 
 package catrenet.model;
 
+import jloda.fx.window.NotificationManager;
 import jloda.util.StringUtils;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.TreeSet;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * computes the disjunctive normal form of a catalyst expression, in which ',' denotes 'or' and '&' denotes 'and',
+ * with '&' binding more strongly than ','. Parentheses can be used for grouping
+ * <p>
+ * The expression is parsed in a single pass. Each conjunction is represented as an array of molecule types, sorted
+ * by name, and conjunctions that contain another conjunction are removed, as they do not change the meaning.
+ * Results are cached by expression in the {@link MoleculeTypePool} of the reaction system, as the same catalyst
+ * expression is often used by many reactions
+ * <p>
+ * Before version 1.1.0, an operator followed by a parenthesized expression was applied to the whole remainder of the
+ * expression, so that x&(y,z),w was read as x&(y,z,w). A warning is shown for each expression that is now read differently
+ */
 public class DisjunctiveNormalForm {
+    private static final Set<String> warnedExpressions = ConcurrentHashMap.newKeySet();
+
+    /**
+     * computes the disjunctive normal form as a string such as a&b,c
+     *
+     * @param expression catalyst expression
+     * @return normal form
+     */
     public static String compute(String expression) {
-		final String result = StringUtils.toString(recurse(expression.replaceAll("\\s+", ",")), ",");
-        return result;
+        return StringUtils.toString(Arrays.stream(computeConjunctions(expression, MoleculeTypePool.getGlobal())).map(DisjunctiveNormalForm::toName).toList(), ",");
     }
 
-    private static Collection<String> recurse(String expression) {
-        if (expression.startsWith("(")) {
-            int other = findBalance(expression, 0);
-            if (other == expression.length() - 1)
-                return recurse(expression.substring(1, other));
-            else {
-                int operator = expression.charAt(other + 1);
-                if (operator == ',') {
-                    return union(recurse(expression.substring(1, other)), recurse(expression.substring(other + 2)));
-                } else if (operator == '&') {
-                    return product(recurse(expression.substring(1, other)), recurse(expression.substring(other + 2)));
-                }
+    /**
+     * computes the disjunctive normal form as a list of conjunctions, sorted by name.
+     * The result is shared, do not modify
+     *
+     * @param expression catalyst expression
+     * @param pool       pool in which the molecule types are interned
+     * @return conjunctions, each given by molecule types sorted by name
+     */
+    public static MoleculeType[][] computeConjunctions(String expression, MoleculeTypePool pool) {
+        return pool.getCatalystConjunctions(expression, e -> {
+            final var parser = new Parser(e, pool);
+            final var conjunctions = parser.parse();
+            parser.warnIfGroupedDifferentlyBefore(conjunctions);
+            conjunctions.sort(Comparator.comparing(DisjunctiveNormalForm::toName));
+            return conjunctions.toArray(new MoleculeType[0][]);
+        });
+    }
+
+    /**
+     * gets the name of a conjunction, such as a&b
+     */
+    public static String toName(MoleculeType[] conjunction) {
+        if (conjunction.length == 1)
+            return conjunction[0].getName();
+        final var buf = new StringBuilder();
+        for (var molecule : conjunction) {
+            if (!buf.isEmpty())
+                buf.append('&');
+            buf.append(molecule.getName());
+        }
+        return buf.toString();
+    }
+
+    /**
+     * recursive descent parser that directly produces the normal form
+     */
+    private static class Parser {
+        private final String expression;
+        private final MoleculeTypePool pool;
+        private int pos = 0;
+
+        Parser(String expression, MoleculeTypePool pool) {
+            this.expression = expression.trim().replaceAll("\\s*([,&()])\\s*", "$1").replaceAll("\\s+", ",");
+            this.pool = pool;
+        }
+
+        List<MoleculeType[]> parse() {
+            var result = parseOr();
+            while (pos < expression.length()) { // unbalanced closing parenthesis, continue as 'or'
+                pos++;
+                result = union(result, parseOr());
             }
-        } else {
-            int pos = nextOr(expression, 0);
-            if (pos > 0) {
-                return union(recurse(expression.substring(0, pos)), recurse(expression.substring(pos + 1)));
+            return result;
+        }
+
+        private List<MoleculeType[]> parseOr() {
+            var result = parseAnd();
+            while (pos < expression.length() && expression.charAt(pos) == ',') {
+                pos++;
+                result = union(result, parseAnd());
             }
-            pos = nextAnd(expression, 0);
-            if (pos > 0) {
-                return product(recurse(expression.substring(0, pos)), recurse(expression.substring(pos + 1)));
+            return result;
+        }
+
+        private List<MoleculeType[]> parseAnd() {
+            var result = parseFactor();
+            while (pos < expression.length() && expression.charAt(pos) == '&') {
+                pos++;
+                result = product(result, parseFactor());
             }
+            return result;
         }
-        return Collections.singletonList(expression);
-    }
 
+        private List<MoleculeType[]> parseFactor() {
+            if (pos < expression.length() && expression.charAt(pos) == '(') {
+                pos++;
+                final var result = parseOr();
+                if (pos < expression.length() && expression.charAt(pos) == ')')
+                    pos++;
+                return result;
+            }
+            final var start = pos;
+            while (pos < expression.length() && ",&()".indexOf(expression.charAt(pos)) == -1)
+                pos++;
+            final var list = new ArrayList<MoleculeType[]>();
+            list.add(new MoleculeType[]{pool.valueOf(expression.substring(start, pos))});
+            return list;
+        }
 
-    private static int findBalance(String expression, int i) {
-        int depth = 0;
-        while (i < expression.length()) {
-            int ch = expression.charAt(i);
-            if (ch == '(')
-                depth++;
-            else if (ch == ')')
-                depth--;
-            if (depth == 0)
-                return i;
-            i++;
+        /**
+         * shows a warning, if the expression was grouped differently before version 1.1.0
+         *
+         * @param conjunctions the normal form of the expression
+         */
+        void warnIfGroupedDifferentlyBefore(List<MoleculeType[]> conjunctions) {
+            if (expression.indexOf('(') != -1 && !warnedExpressions.contains(expression)) {
+                final var before = parseAsBefore(expression);
+                if (before != null && !toNames(before).equals(toNames(conjunctions)) && warnedExpressions.add(expression)) {
+                    NotificationManager.showWarning("Catalyst expression '" + expression + "' is read as '" + String.join(",", toNames(conjunctions))
+                                                    + "', versions before 1.1.0 read it as '" + String.join(",", toNames(before)) + "'");
+                }
+            }
+        }
+
+        /**
+         * parses the expression as done before version 1.1.0
+         *
+         * @return normal form, or null, if the expression is malformed
+         */
+        private List<MoleculeType[]> parseAsBefore(String expression) {
+            if (expression.startsWith("(")) {
+                var depth = 0;
+                var close = -1;
+                for (var i = 0; close == -1 && i < expression.length(); i++) {
+                    if (expression.charAt(i) == '(')
+                        depth++;
+                    else if (expression.charAt(i) == ')' && --depth == 0)
+                        close = i;
+                }
+                if (close == -1)
+                    return null;
+                final var inner = parseAsBefore(expression.substring(1, close));
+                if (close == expression.length() - 1 || inner == null)
+                    return inner;
+                final var rest = parseAsBefore(expression.substring(close + 2));
+                if (rest == null)
+                    return null;
+                return switch (expression.charAt(close + 1)) {
+                    case ',' -> union(inner, rest);
+                    case '&' -> product(inner, rest);
+                    default -> null;
+                };
+            }
+            for (var operator : new char[]{',', '&'}) {
+                for (var i = 0; i < expression.length() && expression.charAt(i) != '('; i++) {
+                    if (expression.charAt(i) == operator) {
+                        final var left = parseAsBefore(expression.substring(0, i));
+                        final var right = parseAsBefore(expression.substring(i + 1));
+                        if (left == null || right == null)
+                            return null;
+                        return (operator == ',' ? union(left, right) : product(left, right));
+                    }
+                }
+            }
+            if (expression.isEmpty() || expression.indexOf('(') != -1 || expression.indexOf(')') != -1)
+                return null;
+            final var list = new ArrayList<MoleculeType[]>();
+            list.add(new MoleculeType[]{pool.valueOf(expression)});
+            return list;
         }
-        return -1;
     }
 
-    private static int nextOr(String expression, int i) {
-        while (i < expression.length()) {
-            int ch = expression.charAt(i);
-            if (ch == ',')
-                return i;
-            else if (ch == '(')
-                return -1;
-            i++;
+    /**
+     * gets the names of the given conjunctions
+     */
+    private static Set<String> toNames(List<MoleculeType[]> conjunctions) {
+        final var names = new TreeSet<String>();
+        for (var conjunction : conjunctions)
+            names.add(toName(conjunction));
+        return names;
+    }
 
-        }
-        return -1;
+    /**
+     * 'or' of two normal forms
+     */
+    private static List<MoleculeType[]> union(List<MoleculeType[]> a, List<MoleculeType[]> b) {
+        final var result = new ArrayList<MoleculeType[]>(a.size() + b.size());
+        result.addAll(a);
+        result.addAll(b);
+        return removeSubsumed(result);
     }
 
-    private static int nextAnd(String expression, int i) {
-        while (i < expression.length()) {
-            int ch = expression.charAt(i);
-            if (ch == '&')
-                return i;
-            else if (ch == '(')
-                return -1;
-            i++;
+    /**
+     * 'and' of two normal forms
+     */
+    private static List<MoleculeType[]> product(List<MoleculeType[]> a, List<MoleculeType[]> b) {
+        final var result = new ArrayList<MoleculeType[]>(a.size() * b.size());
+        for (var x : a) {
+            for (var y : b) {
+                result.add(merge(x, y));
+            }
+        }
+        return removeSubsumed(result);
+    }
 
+    /**
+     * merges two sorted conjunctions
+     */
+    private static MoleculeType[] merge(MoleculeType[] x, MoleculeType[] y) {
+        final var result = new MoleculeType[x.length + y.length];
+        var i = 0;
+        var j = 0;
+        var k = 0;
+        while (i < x.length || j < y.length) {
+            final int cmp = (i == x.length ? 1 : j == y.length ? -1 : x[i].compareTo(y[j]));
+            if (cmp <= 0) {
+                result[k++] = x[i++];
+                if (cmp == 0)
+                    j++;
+            } else
+                result[k++] = y[j++];
         }
-        return -1;
+        return (k == result.length ? result : Arrays.copyOf(result, k));
     }
 
-    public static Collection<String> union(Collection<String> a, Collection<String> b) {
-        final TreeSet<String> set = new TreeSet<>(a);
-        set.addAll(b);
-        return set;
+    /**
+     * removes all conjunctions that contain another one, and duplicates
+     */
+    private static List<MoleculeType[]> removeSubsumed(List<MoleculeType[]> conjunctions) {
+        if (conjunctions.size() <= 1)
+            return conjunctions;
+        conjunctions.sort(Comparator.comparingInt(c -> c.length));
+        final var result = new ArrayList<MoleculeType[]>(conjunctions.size());
+        for (var conjunction : conjunctions) {
+            if (result.stream().noneMatch(other -> containsAll(conjunction, other)))
+                result.add(conjunction);
+        }
+        return result;
     }
 
-    public static Collection<String> product(Collection<String> a, Collection<String> b) {
-        final TreeSet<String> set = new TreeSet<>();
-        for (String aString : a) {
-            for (String bString : b) {
-                if (aString.equals(bString))
-                    set.add(aString);
-                else
-                    set.add(aString + "&" + bString);
-            }
+    /**
+     * does the sorted conjunction x contain all elements of the sorted conjunction y?
+     */
+    private static boolean containsAll(MoleculeType[] x, MoleculeType[] y) {
+        var i = 0;
+        for (var m : y) {
+            while (i < x.length && x[i].compareTo(m) < 0)
+                i++;
+            if (i == x.length || !x[i].equals(m))
+                return false;
+            i++;
         }
-        return set;
+        return true;
     }
 
     public static void main(String[] args) {
@@ -124,4 +291,3 @@ public class DisjunctiveNormalForm {
         System.err.println(expression + " -> " + compute(expression));
     }
 }
-
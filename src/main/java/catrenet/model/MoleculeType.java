@@ -21,34 +21,29 @@ package catrenet.model;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
- * a molecule type
+ * a molecule type. Molecule types are interned in a {@link MoleculeTypePool}, usually the one of the reaction system
+ * that mentions them
  * Daniel Huson, 6.2019
  */
 public class MoleculeType implements Comparable<MoleculeType> {
-    private final static Map<String, MoleculeType> name2type = new HashMap<>();
-
     private final String name;
 
     /**
-     * creates the named molecule
+     * gets the named molecule from the global pool, creating it, if necessary.
+     * Molecules of a reaction system should be obtained from its pool, see {@link ReactionSystem#getMoleculeTypePool()}
      *
      * @return molecule
      */
     public static MoleculeType valueOf(String name) {
-        if (!name2type.containsKey(name))
-            name2type.put(name, new MoleculeType(name));
-        return name2type.get(name);
+        return MoleculeTypePool.getGlobal().valueOf(name);
     }
 
-    private MoleculeType(String name) {
+    MoleculeType(String name) {
         this.name = name;
     }
 
-
     public String getName() {
         return name;
     }
@@ -0,0 +1,147 @@
+/*
+ *  MoleculeTypePool.java Copyright (C) 2025 Daniel H. Huson
+ *
+ *  (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package catrenet.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * a thread-safe pool of interned molecule types.
+ * <p>
+ * Each reaction system owns a pool, in which the molecule types of its reactions and food set are interned when they
+ * are parsed or generated. Molecule types that already exist in the global pool are reused. The pool also caches the
+ * disjunctive normal forms of the catalyst expressions of its reactions. When the owner of the reaction system, such as
+ * a document, is done with it, the pool is closed and all its molecule types and normal forms are released.
+ * Molecule types are compared by name, so molecule types of different pools that have the same name are equal.
+ * <p>
+ * The global pool is only used for molecule types that are not created on behalf of a reaction system, and it doesn't
+ * cache normal forms, so that it doesn't grow with the size of the inputs
+ */
+public class MoleculeTypePool implements AutoCloseable {
+	private static final MoleculeTypePool global = new MoleculeTypePool(null);
+
+	private final MoleculeTypePool parent;
+	private final Map<String, MoleculeType> name2type = new ConcurrentHashMap<>();
+	private final Map<String, MoleculeType[][]> catalystConjunctions = new ConcurrentHashMap<>();
+	private volatile boolean closed = false;
+
+	/**
+	 * creates a new pool, which reuses the molecule types of the global pool
+	 */
+	public MoleculeTypePool() {
+		this(global);
+	}
+
+	private MoleculeTypePool(MoleculeTypePool parent) {
+		this.parent = parent;
+	}
+
+	/**
+	 * gets the global pool
+	 *
+	 * @return global pool
+	 */
+	public static MoleculeTypePool getGlobal() {
+		return global;
+	}
+
+	/**
+	 * closes this pool, releasing all its molecule types and normal forms. Molecule types that are requested from a
+	 * closed pool are no longer interned
+	 */
+	@Override
+	public void close() {
+		if (this == global)
+			throw new IllegalStateException("Can't close global pool");
+		if (!closed) {
+			closed = true;
+			name2type.clear();
+			catalystConjunctions.clear();
+		}
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * gets the named molecule type, creating it, if it doesn't exist in this pool or the global pool
+	 *
+	 * @param name name
+	 * @return molecule type
+	 */
+	public MoleculeType valueOf(String name) {
+		final var type = get(name);
+		if (type != null)
+			return type;
+		if (closed)
+			return new MoleculeType(name);
+		return name2type.computeIfAbsent(name, MoleculeType::new);
+	}
+
+	/**
+	 * gets the named molecule types, creating them, if necessary
+	 *
+	 * @param names names
+	 * @return molecule types
+	 */
+	public List<MoleculeType> valuesOf(String[] names) {
+		final var list = new ArrayList<MoleculeType>(names.length);
+		for (var name : names) {
+			list.add(valueOf(name));
+		}
+		return list;
+	}
+
+	/**
+	 * gets the named molecule type from this pool or the global pool
+	 *
+	 * @param name name
+	 * @return molecule type or null
+	 */
+	public MoleculeType get(String name) {
+		for (var pool = this; pool != null; pool = pool.parent) {
+			final var type = pool.name2type.get(name);
+			if (type != null)
+				return type;
+		}
+		return null;
+	}
+
+	/**
+	 * number of molecule types interned in this pool, not counting the global pool
+	 */
+	public int size() {
+		return name2type.size();
+	}
+
+	/**
+	 * gets the disjunctive normal form of a catalyst expression, computing it, if it isn't cached in this pool,
+	 * used by {@link DisjunctiveNormalForm}. The global pool and closed pools don't cache
+	 */
+	MoleculeType[][] getCatalystConjunctions(String expression, Function<String, MoleculeType[][]> compute) {
+		if (this == global || closed)
+			return compute.apply(expression);
+		return catalystConjunctions.computeIfAbsent(expression, compute);
+	}
+}
@@ -25,7 +25,6 @@ import jloda.util.StringUtils;
 
 import java.io.IOException;
 import java.util.*;
-import java.util.stream.Collectors;
 
 import static catrenet.io.ModelIO.FORMAL_FOOD;
 
@@ -39,10 +38,13 @@ public class Reaction implements Comparable<Reaction> {
     private static boolean warnedAboutSuppressingCoefficients = false;
 
     private final String name;
+    private final MoleculeTypePool moleculeTypePool; // pool used for the catalyst conjunctions
 
     private final Set<MoleculeType> reactants = new TreeSet<>();
     private final Set<MoleculeType> products = new TreeSet<>();
     private String catalysts = "";
+    private volatile Set<MoleculeType> catalystConjunctions; // parsed from catalysts, null if not yet parsed
+    private volatile MoleculeType[][] catalystConjunctionElements; // parsed from catalysts, null if not yet parsed
     private final Set<MoleculeType> inhibitions = new TreeSet<>();
 
     private final Map<MoleculeType, Integer> reactantCoefficient = new HashMap<>();
@@ -55,7 +57,17 @@ public class Reaction implements Comparable<Reaction> {
      *
 	 */
     public Reaction(String name) {
+        this(name, MoleculeTypePool.getGlobal());
+    }
+
+    /**
+     * constructor
+     *
+     * @param moleculeTypePool pool in which catalyst conjunctions are interned, usually the one of the reaction system
+     */
+    public Reaction(String name, MoleculeTypePool moleculeTypePool) {
         this.name = name;
+        this.moleculeTypePool = moleculeTypePool;
     }
 
     /**
@@ -63,10 +75,12 @@ public class Reaction implements Comparable<Reaction> {
      *
 	 */
     public Reaction(Reaction src) {
-        this(src.getName());
+        this(src.getName(), src.moleculeTypePool);
         reactants.addAll(src.getReactants());
         products.addAll(src.getProducts());
         catalysts = src.getCatalysts();
+        catalystConjunctions = src.catalystConjunctions;
+        catalystConjunctionElements = src.catalystConjunctionElements;
         inhibitions.addAll(src.getInhibitions());
         direction = src.getDirection();
     }
@@ -77,10 +91,12 @@ public class Reaction implements Comparable<Reaction> {
      *
 	 */
     public Reaction(String name, Reaction src) {
-        this(name);
+        this(name, src.moleculeTypePool);
         reactants.addAll(src.getReactants());
         products.addAll(src.getProducts());
         catalysts = src.getCatalysts();
+        catalystConjunctions = src.catalystConjunctions;
+        catalystConjunctionElements = src.catalystConjunctionElements;
         inhibitions.addAll(src.getInhibitions());
         direction = src.getDirection();
         productCoefficient.putAll(src.productCoefficient);
@@ -90,17 +106,38 @@ public class Reaction implements Comparable<Reaction> {
     public boolean isCatalyzedAndUninhibitedAndHasAllReactants(Collection<MoleculeType> food, Direction direction) {
         return (((direction == Direction.forward || direction == Direction.both) && food.containsAll(getReactants()))
                 || ((direction == Direction.reverse || direction == Direction.both) && food.containsAll(getProducts())))
-               && (getCatalysts().length() == 0 || getCatalystConjunctions().stream().map(m -> MoleculeType.valuesOf(m.getName().split("&"))).anyMatch(food::containsAll))
+               && isCatalyzed(food)
                && (getInhibitions().size() == 0 || getInhibitions().stream().noneMatch(food::contains));
     }
 
     public boolean isCatalyzedAndUninhibitedAndHasAllReactants(Collection<MoleculeType> foodForReactants, Collection<MoleculeType> foodForCatalysts, Collection<MoleculeType> foodForInhibitors, Direction direction) {
         return (((direction == Direction.forward || direction == Direction.both) && foodForReactants.containsAll(getReactants()))
                 || ((direction == Direction.reverse || direction == Direction.both) && foodForReactants.containsAll(getProducts())))
-               && (getCatalysts().length() == 0 || getCatalystConjunctions().stream().map(m -> MoleculeType.valuesOf(m.getName().split("&"))).anyMatch(foodForCatalysts::containsAll))
+               && isCatalyzed(foodForCatalysts)
                && (getInhibitions().size() == 0 || getInhibitions().stream().noneMatch(foodForReactants::contains));
     }
 
+    /**
+     * is this reaction catalyzed by the given molecules, or does it not require a catalyst?
+     */
+    public boolean isCatalyzed(Collection<MoleculeType> molecules) {
+        if (getCatalysts().length() == 0)
+            return true;
+        for (var conjunction : getCatalystConjunctionElements()) {
+            if (containsAll(molecules, conjunction))
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean containsAll(Collection<MoleculeType> molecules, MoleculeType[] elements) {
+        for (var molecule : elements) {
+            if (!molecules.contains(molecule))
+                return false;
+        }
+        return true;
+    }
+
     public boolean isHasAllReactants(Collection<MoleculeType> food, Direction direction) {
         return (((direction == Direction.forward || direction == Direction.both) && food.containsAll(getReactants()))
                 || ((direction == Direction.reverse || direction == Direction.both) && food.containsAll(getProducts())));
@@ -134,6 +171,15 @@ public class Reaction implements Comparable<Reaction> {
      * @return the reaction
 	 */
 	public static Reaction parse(String line, final Set<Reaction> auxReactions, boolean tabbedFormat) throws IOException {
+		return parse(line, auxReactions, tabbedFormat, MoleculeTypePool.getGlobal());
+	}
+
+	/**
+	 * parses a reaction, as above, interning all molecule types in the given pool
+	 *
+	 * @return the reaction
+	 */
+	public static Reaction parse(String line, final Set<Reaction> auxReactions, boolean tabbedFormat, MoleculeTypePool pool) throws IOException {
 		line = line.replaceAll("->", "=>").replaceAll("<-", "<=");
 
         if (tabbedFormat) { // name <tab>  a+b -> c <tab> catalysts
@@ -215,10 +261,10 @@ public class Reaction implements Comparable<Reaction> {
 
         final var products = StringUtils.trimAll(line.substring(endArrow + 1).trim().split("[+\\s]+"));
 
-        final var reaction = new Reaction(reactionName);
+        final var reaction = new Reaction(reactionName, pool);
 
         if (Arrays.stream(reactants).allMatch(NumberUtils::isDouble)) { // all tokens look like numbers, don't allow coefficients
-            reaction.getReactants().addAll(MoleculeType.valuesOf(reactants));
+            reaction.getReactants().addAll(pool.valuesOf(reactants));
         } else { // some tokens are not numbers, assume this is mix of coefficients and reactants
             var coefficient = -1;
             for (var token : reactants) {
@@ -229,9 +275,9 @@ public class Reaction implements Comparable<Reaction> {
                         throw new IOException("Can't distinguish between coefficients and reactant names : " + StringUtils.toString(reactants, " "));
                 } else {
                     if (coefficient == -1 || coefficient > 0)
-                        reaction.getReactants().add(MoleculeType.valueOf(token));
+                        reaction.getReactants().add(pool.valueOf(token));
                     if (coefficient > 0) {
-                        reaction.setReactantCoefficient(MoleculeType.valueOf(token), coefficient);
+                        reaction.setReactantCoefficient(pool.valueOf(token), coefficient);
                         if (!warnedAboutSuppressingCoefficients) {
                             NotificationManager.showWarning("Coefficients found in reactions, ignored");
                             warnedAboutSuppressingCoefficients = true;
@@ -247,7 +293,7 @@ public class Reaction implements Comparable<Reaction> {
         }
 
         if (Arrays.stream(products).allMatch(NumberUtils::isDouble)) { // all tokens look like numbers, don't allow coefficients
-            reaction.getProducts().addAll(MoleculeType.valuesOf(products));
+            reaction.getProducts().addAll(pool.valuesOf(products));
         } else { // some tokens are not numbers, assume this is mix of coefficients and reactants
             var coefficient = -1;
             for (var token : products) {
@@ -258,9 +304,9 @@ public class Reaction implements Comparable<Reaction> {
                         throw new IOException("Can't distinguish between coefficients and product names : " + StringUtils.toString(products, " "));
                 } else {
                     if (coefficient == -1 || coefficient > 0)
-                        reaction.getProducts().add(MoleculeType.valueOf(token));
+                        reaction.getProducts().add(pool.valueOf(token));
                     if (coefficient > 0) {
-                        reaction.setProductCoefficient(MoleculeType.valueOf(token), coefficient);
+                        reaction.setProductCoefficient(pool.valueOf(token), coefficient);
                         if (!warnedAboutSuppressingCoefficients) {
                             NotificationManager.showWarning("Coefficients found in reactions, ignored");
                             warnedAboutSuppressingCoefficients = true;
@@ -275,7 +321,7 @@ public class Reaction implements Comparable<Reaction> {
 				throw new IOException("Can't distinguish between coefficients and product names : " + StringUtils.toString(products, " "));
         }
         reaction.setCatalysts(catalysts);
-        reaction.getInhibitions().addAll(MoleculeType.valuesOf(inhibitors));
+        reaction.getInhibitions().addAll(pool.valuesOf(inhibitors));
         reaction.setDirection(direction);
         return reaction;
     }
@@ -299,6 +345,10 @@ public class Reaction implements Comparable<Reaction> {
         return name;
     }
 
+    public MoleculeTypePool getMoleculeTypePool() {
+        return moleculeTypePool;
+    }
+
     public Set<MoleculeType> getReactants() {
         return reactants;
     }
@@ -313,19 +363,50 @@ public class Reaction implements Comparable<Reaction> {
 
     public void setCatalysts(String catalysts) {
         this.catalysts = (catalysts != null ? catalysts : "");
+        catalystConjunctions = null;
+        catalystConjunctionElements = null;
     }
 
+    /**
+     * gets the catalyst conjunctions in disjunctive normal form, each conjunction represented by a molecule type
+     * such as a&b. The normal form is computed once and cached until the catalysts are changed
+     *
+     * @return new set of conjunctions
+     */
     public Set<MoleculeType> getCatalystConjunctions() {
-        final var set = new TreeSet<MoleculeType>();
-        final var dnf = DisjunctiveNormalForm.compute(getCatalysts());
-        for (var part : dnf.split(",")) {
-            set.add(MoleculeType.valueOf(part));
+        var conjunctions = catalystConjunctions;
+        if (conjunctions == null) {
+            final var set = new TreeSet<MoleculeType>();
+            for (var conjunction : getCatalystConjunctionElements()) {
+                set.add(moleculeTypePool.valueOf(DisjunctiveNormalForm.toName(conjunction)));
+            }
+            conjunctions = Collections.unmodifiableSet(set);
+            catalystConjunctions = conjunctions;
         }
-        return set;
+        return new TreeSet<>(conjunctions);
+    }
+
+    /**
+     * gets the elements of all catalyst conjunctions in disjunctive normal form, one array per conjunction,
+     * sorted by name. Computed once and cached until the catalysts are changed
+     *
+     * @return conjunctions, do not modify
+     */
+    public MoleculeType[][] getCatalystConjunctionElements() {
+        var elements = catalystConjunctionElements;
+        if (elements == null) {
+            elements = DisjunctiveNormalForm.computeConjunctions(getCatalysts(), moleculeTypePool);
+            catalystConjunctionElements = elements;
+        }
+        return elements;
     }
 
     public Set<MoleculeType> getCatalystElements() {
-		return getCatalystConjunctions().parallelStream().map(c -> MoleculeType.valuesOf(StringUtils.split(c.getName(), '&'))).flatMap(Collection::stream).collect(Collectors.toSet());
+        final var set = new HashSet<MoleculeType>();
+        for (var conjunction : getCatalystConjunctionElements()) {
+            set.addAll(Arrays.asList(conjunction));
+        }
+        return set;
     }
 
 
@@ -345,8 +426,13 @@ public class Reaction implements Comparable<Reaction> {
         productCoefficient.put(product, coefficient);
     }
 
+    /**
+     * gets this reaction as a list of forward reactions, a reaction that runs in both directions is split into two
+     *
+     * @return new forward reactions
+     */
     public List<Reaction> allAsForward() {
-        return switch (getDirection()) {
+        final var list = switch (getDirection()) {
             case forward -> {
                 var forward = new Reaction(Reaction.this.name, this);
                 yield List.of(forward);
@@ -363,6 +449,8 @@ public class Reaction implements Comparable<Reaction> {
                 yield List.of(forward, reverse);
             }
         };
+        list.forEach(r -> r.setDirection(Direction.forward));
+        return list;
     }
 
     private void swapReactantsAndProducts() {
@@ -19,32 +19,24 @@
 
 package catrenet.model;
 
-import javafx.beans.binding.Bindings;
-import javafx.beans.property.*;
-import javafx.collections.FXCollections;
-import javafx.collections.ListChangeListener;
-import javafx.collections.ObservableList;
 import jloda.util.CollectionUtils;
 
 import java.util.*;
 import java.util.stream.Collectors;
 
 /**
- * a catalytic reaction system
+ * a catalytic reaction system. Reactions and food are kept in plain lists, see ObservableReactionSystem in the window
+ * package for the observable version used by the GUI
  * Daniel Huson, 6.2019
  */
 public class ReactionSystem {
-    private final ObservableList<Reaction> reactions = FXCollections.observableArrayList();
-    private final ObservableList<MoleculeType> foods = FXCollections.observableArrayList();
+    private final List<Reaction> reactions;
+    private final List<MoleculeType> foods;
+    private final MoleculeTypePool moleculeTypePool;
 
-    private final BooleanProperty inhibitorsPresent = new SimpleBooleanProperty(false);
+    private boolean inhibitorsPresent = false;
 
-    private final IntegerProperty size = new SimpleIntegerProperty();
-    private final IntegerProperty foodSize = new SimpleIntegerProperty();
-
-    private int numberOfTwoWayReactions = 0;
-
-    private final StringProperty name = new SimpleStringProperty("Reactions");
+    private String name;
 
     /**
      * construct a reactions systems
@@ -57,41 +49,67 @@ public class ReactionSystem {
      * construct a reactions systems
      */
     public ReactionSystem(final String name) {
-        size.bind(Bindings.size(reactions));
-        foodSize.bind(Bindings.size(foods));
-
-        setName(name);
-
-        reactions.addListener((ListChangeListener<Reaction>) e -> {
-            while (e.next()) {
-                for (Reaction reaction : e.getAddedSubList()) {
-                    if (reaction.getDirection() == Reaction.Direction.both)
-                        numberOfTwoWayReactions++;
-                }
-                for (Reaction reaction : e.getRemoved()) {
-                    if (reaction.getDirection() == Reaction.Direction.both)
-                        numberOfTwoWayReactions--;
-                }
-            }
-        });
-        updateIsInhibitorsPresent();
+        this(name, new MoleculeTypePool());
     }
 
-    public ObservableList<Reaction> getReactions() {
+    /**
+     * construct a reactions systems that interns its molecule types in the given pool
+     */
+    public ReactionSystem(final String name, MoleculeTypePool moleculeTypePool) {
+        this(name, new ArrayList<>(), new ArrayList<>(), moleculeTypePool);
+    }
+
+    /**
+     * construct a reactions system that uses the given (empty) lists
+     */
+    protected ReactionSystem(final String name, List<Reaction> reactions, List<MoleculeType> foods, MoleculeTypePool moleculeTypePool) {
+        this.reactions = reactions;
+        this.foods = foods;
+        this.name = name;
+        this.moleculeTypePool = moleculeTypePool;
+    }
+
+    public List<Reaction> getReactions() {
         return reactions;
     }
 
-    public ObservableList<MoleculeType> getFoods() {
+    public List<MoleculeType> getFoods() {
         return foods;
     }
 
+    /**
+     * gets the pool in which the molecule types of this reaction system are interned when parsed or generated.
+     * The owner of the reaction system should close it, when done
+     *
+     * @return pool
+     */
+    public MoleculeTypePool getMoleculeTypePool() {
+        return moleculeTypePool;
+    }
+
+    /**
+     * replaces all reactions
+     */
+    public void setReactions(Collection<Reaction> reactions) {
+        this.reactions.clear();
+        this.reactions.addAll(reactions);
+    }
+
+    /**
+     * replaces all food molecules
+     */
+    public void setFoods(Collection<MoleculeType> foods) {
+        this.foods.clear();
+        this.foods.addAll(foods);
+    }
+
     /**
      * create a shallow copy that references reactions
      *
      * @return shallow copy of this model
      */
     public ReactionSystem shallowCopy() {
-        final ReactionSystem result = new ReactionSystem();
+        final ReactionSystem result = new ReactionSystem(null, moleculeTypePool);
         result.shallowCopy(this);
         return result;
     }
@@ -118,41 +136,29 @@ public class ReactionSystem {
      * @return number of reactions
      */
     public int size() {
-        return size.get();
-    }
-
-    /**
-     * size property
-     *
-     * @return size
-     */
-    public ReadOnlyIntegerProperty sizeProperty() {
-        return size;
+        return reactions.size();
     }
 
     public int getFoodSize() {
-        return foodSize.get();
-    }
-
-    public IntegerProperty foodSizeProperty() {
-        return foodSize;
-    }
-
-    public void setFoodSize(int foodSize) {
-        this.foodSize.set(foodSize);
+        return foods.size();
     }
 
     public int getNumberOfTwoWayReactions() {
-        return numberOfTwoWayReactions;
+        var count = 0;
+        for (var reaction : reactions) {
+            if (reaction.getDirection() == Reaction.Direction.both)
+                count++;
+        }
+        return count;
     }
 
     public int getNumberOfOneWayReactions() {
-        return size() - numberOfTwoWayReactions;
+        return size() - getNumberOfTwoWayReactions();
     }
 
 
     public String getName() {
-        return name.get();
+        return name;
     }
 
     public String getHeaderLine() {
@@ -169,30 +175,26 @@ public class ReactionSystem {
 
     }
 
-    public StringProperty nameProperty() {
-        return name;
-    }
-
     public void setName(String name) {
-        this.name.set(name);
+        this.name = name;
     }
 
     public boolean isInhibitorsPresent() {
-        return inhibitorsPresent.get();
+        return inhibitorsPresent;
     }
 
-    public ReadOnlyBooleanProperty inhibitorsPresentProperty() {
-        return inhibitorsPresent;
+    protected void setInhibitorsPresent(boolean inhibitorsPresent) {
+        this.inhibitorsPresent = inhibitorsPresent;
     }
 
     public void updateIsInhibitorsPresent() {
         for (Reaction reaction : reactions) {
             if (reaction.getInhibitions().size() > 0) {
-                inhibitorsPresent.set(true);
+                setInhibitorsPresent(true);
                 return;
             }
         }
-        inhibitorsPresent.set(false);
+        setInhibitorsPresent(false);
     }
 
     /**
@@ -222,7 +224,7 @@ public class ReactionSystem {
             set.addAll(r.getReactants());
             set.addAll(r.getInhibitions());
             set.addAll(r.getProducts());
-            set.addAll(r.getCatalystConjunctions().stream().map(c -> MoleculeType.valuesOf(c.getName().split("&"))).flatMap(Collection::stream).collect(Collectors.toSet()));
+            set.addAll(r.getCatalystElements());
         });
         return foods.parallelStream().filter(set::contains).collect(Collectors.toList());
     }
@@ -242,7 +244,7 @@ public class ReactionSystem {
 	}
 
 	public ReactionSystem sorted() {
-		final ReactionSystem reactionSystem = new ReactionSystem(getName());
+		final ReactionSystem reactionSystem = new ReactionSystem(getName(), moleculeTypePool);
 		reactionSystem.getFoods().addAll(new TreeSet<>(getFoods()));
 		reactionSystem.getReactions().addAll(new TreeSet<>(getReactions()));
 		return reactionSystem;
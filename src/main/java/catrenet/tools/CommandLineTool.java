@@ -20,10 +20,11 @@
 package catrenet.tools;
 
 import catrenet.action.ImportWimsFormat;
-import catrenet.algorithm.AlgorithmBase;
-import catrenet.algorithm.MinIRAFHeuristic;
+import catrenet.algorithm.*;
 import catrenet.io.ModelIO;
+import catrenet.io.ResultCache;
 import catrenet.main.CatReNet;
+import catrenet.model.CompiledReactionSystem;
 import catrenet.model.ReactionSystem;
 import catrenet.settings.ArrowNotation;
 import catrenet.settings.ReactionNotation;
@@ -81,10 +82,29 @@ public class CommandLineTool {
 		if (algorithmName.equals(StringUtils.toCamelCase(MinIRAFHeuristic.Name)) || options.isDoHelp()) {
 			numberRandomizedInsertionOrders = options.getOption("-r", "runs", "Number of randomized runs for " + MinIRAFHeuristic.Name + " heuristic", numberRandomizedInsertionOrders);
 		}
+		var timeLimitSeconds = (new MinIRAFBranchAndBound()).getTimeLimitSeconds();
+		var maxNumberOfNodes = (new MinIRAFBranchAndBound()).getMaxNumberOfNodes();
+		if (algorithmName.equals(StringUtils.toCamelCase(MinIRAFBranchAndBound.Name)) || options.isDoHelp()) {
+			timeLimitSeconds = options.getOption("-tl", "timeLimit", "Time limit in seconds for " + MinIRAFBranchAndBound.Name + " search", timeLimitSeconds);
+			maxNumberOfNodes = options.getOption("-mn", "maxNodes", "Maximum number of search tree nodes for " + MinIRAFBranchAndBound.Name + " search", maxNumberOfNodes);
+		}
+		var seedString = "";
+		if (algorithmName.equals(StringUtils.toCamelCase(MuCAFAlgorithm.Name)) || options.isDoHelp()) {
+			seedString = options.getOption("-s", "seed", "Seed for " + MuCAFAlgorithm.Name + ", such as a seed reported by multiple runs in the GUI (default: random)", "");
+		}
 		options.comment(ArgsOptions.OTHER);
+		final var useResultCache = options.getOption("-rc", "resultCache", "Reuse results of previous runs on the same input", true);
+		final var resultCacheFile = options.getOption("-rf", "resultCacheFile", "Result cache file", ResultCache.getDefaultFile());
 		final var propertiesFile = options.getOption("-P", "propertiesFile", "Properties file", CatReNet.getDefaultPropertiesFile());
 		options.done();
 
+		final Long seed;
+		try {
+			seed = (seedString.isBlank() ? null : Long.parseLong(seedString.trim()));
+		} catch (NumberFormatException ex) {
+			throw new UsageException("Invalid seed: " + seedString);
+		}
+
 		FileUtils.checkAllFilesDifferent(inputFile, outputFile);
 		FileUtils.fileExistsAndIsNonEmpty(inputFile);
 		FileUtils.checkFileWritable(outputFile, true);
@@ -97,9 +117,27 @@ public class CommandLineTool {
 		if (algorithm == null)
 			throw new IOException("Algorithm not found: " + algorithmName);
 
-		if (algorithm instanceof MinIRAFHeuristic irrRAFHeuristic) {
+		if (algorithm instanceof MinIRAFHeuristic irrRAFHeuristic)
 			irrRAFHeuristic.setNumberOfRandomInsertionOrders(numberRandomizedInsertionOrders);
-			var outputSystems = irrRAFHeuristic.applyAllSmallest(inputSystem, new ProgressPercentage("Running", algorithmName));
+		if (algorithm instanceof MinIRAFBranchAndBound branchAndBound) {
+			branchAndBound.setTimeLimitSeconds(timeLimitSeconds);
+			branchAndBound.setMaxNumberOfNodes(maxNumberOfNodes);
+		}
+
+		final var parameters = algorithm.getCacheParameters();
+		final var cache = (useResultCache && parameters != null ? new ResultCache(resultCacheFile, ResultCache.DEFAULT_MAX_SIZE) : null);
+
+		if (algorithm instanceof MinIRAFHeuristic irrRAFHeuristic) {
+			// all smallest iRAFs are a different output than the single one cached by the GUI, so use a different key
+			final var key = (cache != null ? ResultCache.computeKey(ResultCache.computeHash(inputSystem), algorithm.getName() + " all smallest", parameters) : null);
+			var outputSystems = (cache != null ? cache.getReactionSystems(key) : null);
+			if (outputSystems != null)
+				System.err.println("Using cached result");
+			else {
+				outputSystems = irrRAFHeuristic.applyAllSmallest(inputSystem, new ProgressPercentage("Running", algorithmName));
+				if (cache != null)
+					cache.putReactionSystems(key, outputSystems);
+			}
 
 			if (!outputFile.equalsIgnoreCase("stdout"))
 				System.err.println("Writing file: " + outputFile);
@@ -111,7 +149,19 @@ public class CommandLineTool {
 				}
 			}
 		} else {
-			var outputSystem = algorithm.apply(inputSystem, new ProgressPercentage("Running", algorithmName));
+			final var key = (cache != null ? ResultCache.computeKey(ResultCache.computeHash(inputSystem), algorithm.getName(), parameters) : null);
+			var outputSystem = (cache != null ? cache.getReactionSystem(key) : null);
+			if (outputSystem != null)
+				System.err.println("Using cached result");
+			else {
+				if (seed != null && algorithm instanceof IRandomizedAlgorithm randomized) {
+					final var compiled = new CompiledReactionSystem(inputSystem);
+					outputSystem = compiled.toReactionSystem(randomized.getName(), randomized.apply(compiled, seed));
+				} else
+					outputSystem = algorithm.apply(inputSystem, new ProgressPercentage("Running", algorithmName));
+				if (cache != null)
+					cache.putReactionSystem(key, outputSystem);
+			}
 
 			if (!outputFile.equalsIgnoreCase("stdout"))
 				System.err.println("Writing file: " + outputFile);
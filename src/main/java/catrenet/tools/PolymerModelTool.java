@@ -105,7 +105,7 @@ public class PolymerModelTool {
 								var polymerModel = new PolymerModel();
 								polymerModel.setInputParameters(new PolymerModel.Parameters(a, k, n, m, r));
 								var reactionSystem = polymerModel.apply();
-								try (var w = FileUtils.getOutputWriterPossiblyZIPorGZIP(fileName)) {
+								try (var pool = reactionSystem.getMoleculeTypePool(); var w = FileUtils.getOutputWriterPossiblyZIPorGZIP(fileName)) { // release molecules of replicate
 									w.write("# Polymer model a=%d k=%d n=%d m=%s r=%d:%n%n".formatted(a, k, n, StringUtils.removeTrailingZerosAfterDot(m), r));
 									ModelIO.write(reactionSystem, w, true, reactionNotation, arrowNotation);
 									w.write("\n#EOF\n");
@@ -19,16 +19,15 @@
 
 package catrenet.view;
 
-import catrenet.model.MoleculeType;
-import catrenet.model.Reaction;
+import catrenet.model.CompiledReactionSystem;
 import catrenet.model.ReactionSystem;
 import jloda.graph.Graph;
 import jloda.graph.Node;
-import jloda.util.CollectionUtils;
-import jloda.util.StringUtils;
+import jloda.util.ProgramExecutorService;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 /**
  * setup up the  association graph
@@ -36,52 +35,64 @@ import java.util.HashSet;
  */
 public class SetupAssocationGraph {
 	/**
-	 * apply
+	 * apply. There is an edge from r1 to r2, if r1 produces a non-food molecule that r2 consumes, that is, uses as a
+	 * reactant (in any direction in which r2 runs), as a catalyst (if useCatalysts is set) or as an inhibitor. The
+	 * consumers of each molecule are taken from the indexes of the compiled reaction system, and the targets of all
+	 * reactions are determined in parallel
 	 */
 	public static void apply(Graph reactionGraph, ReactionSystem reactionSystem, boolean useCatalysts) {
-		final var reactionNodeMap = new HashMap<Reaction, Node>();
+		final var compiled = new CompiledReactionSystem(reactionSystem);
 
-		reactionSystem.getReactions().forEach(r -> reactionNodeMap.put(r, reactionGraph.newNode(r)));
+		final var nodes = new Node[compiled.getNumberOfReactions()];
+		for (var r = 0; r < nodes.length; r++) {
+			nodes[r] = reactionGraph.newNode(compiled.getReaction(r));
+		}
 
-		reactionSystem.getReactions().forEach(r1 -> {
-			final var v = reactionNodeMap.get(r1);
+		final var foods = compiled.getFoods();
+		final var targets = new BitSet[compiled.getNumberOfReactions()];
+		final var pool = new ForkJoinPool(ProgramExecutorService.getNumberOfCoresToUse());
+		try {
+			pool.submit(() -> IntStream.range(0, targets.length).parallel().forEach(r1 -> {
+				final var set = new BitSet();
+				if (compiled.isForward(r1))
+					addConsumers(compiled, foods, compiled.getProducts(r1), useCatalysts, set);
+				if (compiled.isReverse(r1))
+					addConsumers(compiled, foods, compiled.getReactants(r1), useCatalysts, set);
+				set.clear(r1);
+				targets[r1] = set;
+			})).join();
+		} finally {
+			pool.shutdown();
+		}
 
-			reactionSystem.getReactions().stream().filter(r2 -> r2 != r1).forEach(r2 -> {
-				final var w = reactionNodeMap.get(r2);
+		for (var r1 = 0; r1 < targets.length; r1++) {
+			for (var r2 = targets[r1].nextSetBit(0); r2 >= 0; r2 = targets[r1].nextSetBit(r2 + 1)) {
+				reactionGraph.newEdge(nodes[r1], nodes[r2], EdgeType.Association);
+			}
+		}
+	}
 
-				for (var z = 0; z <= 1; z++) { // try forward, then reverse
-					final var nonFoodProducts = new HashSet<MoleculeType>();
-					if (z == 0) {
-						if (r1.getDirection() == Reaction.Direction.forward || r1.getDirection() == Reaction.Direction.both) {
-							nonFoodProducts.addAll(r1.getProducts());
-							reactionSystem.getFoods().forEach(nonFoodProducts::remove);
-						} else
-							continue;
-					} else // z==1
-					{
-						if (r1.getDirection() == Reaction.Direction.reverse || r1.getDirection() == Reaction.Direction.both) {
-							nonFoodProducts.addAll(r1.getReactants());
-							reactionSystem.getFoods().forEach(nonFoodProducts::remove);
-                        } else
-                            continue;
-                    }
-
-					if (!nonFoodProducts.isEmpty()) {
-						final var catalysts = new HashSet<MoleculeType>();
-						r2.getCatalystConjunctions().forEach(c -> catalysts.addAll(MoleculeType.valuesOf(StringUtils.split(c.getName(), '&'))));
-
-						if ((r2.getDirection() == Reaction.Direction.forward || r2.getDirection() == Reaction.Direction.both) &&
-							(CollectionUtils.intersects(nonFoodProducts, r2.getReactants()) || (useCatalysts && (CollectionUtils.intersects(nonFoodProducts, catalysts)) || CollectionUtils.intersects(nonFoodProducts, r2.getInhibitions())))
-							&& v.getEdgeTo(w) == null) {
-							reactionGraph.newEdge(v, w, EdgeType.Association);
-						} else if ((r2.getDirection() == Reaction.Direction.reverse || r2.getDirection() == Reaction.Direction.both) &&
-								   (CollectionUtils.intersects(nonFoodProducts, r2.getProducts()) || (useCatalysts && (CollectionUtils.intersects(nonFoodProducts, catalysts)) || CollectionUtils.intersects(nonFoodProducts, r2.getInhibitions())))
-								   && v.getEdgeTo(w) == null) {
-							reactionGraph.newEdge(v, w, EdgeType.Association);
-						}
-					}
-                }
-            });
-        });
-    }
+	/**
+	 * adds all reactions that consume one of the given molecules, ignoring food molecules
+	 */
+	private static void addConsumers(CompiledReactionSystem compiled, BitSet foods, int[] molecules, boolean useCatalysts, BitSet consumers) {
+		for (var m : molecules) {
+			if (!foods.get(m)) {
+				for (var r : compiled.getReactionsWithReactant(m)) {
+					if (compiled.isForward(r))
+						consumers.set(r);
+				}
+				for (var r : compiled.getReactionsWithProduct(m)) {
+					if (compiled.isReverse(r))
+						consumers.set(r);
+				}
+				if (useCatalysts) {
+					for (var r : compiled.getReactionsWithCatalyst(m))
+						consumers.set(r);
+				}
+				for (var r : compiled.getReactionsWithInhibition(m))
+					consumers.set(r);
+			}
+		}
+	}
 }
@@ -73,7 +73,7 @@ public class SetupFullGraph {
             if (!suppressCatalystEdges) {
 				for (var molecule : reaction.getCatalystConjunctions()) {
                     if (molecule.getName().contains("&")) {
-						for (var catalyst : MoleculeType.valuesOf(StringUtils.trimAll(StringUtils.split(molecule.getName(), '&')))) {
+						for (var catalyst : reaction.getMoleculeTypePool().valuesOf(StringUtils.trimAll(StringUtils.split(molecule.getName(), '&')))) {
 							final var andNode = getNode(reactionGraph, reactionSystem, molecule, molecule2node, useMultiCopyFoodNodes);
 							if (useMultiCopyFoodNodes) {
 								final var node = StreamSupport.stream(andNode.parents().spliterator(), true).filter(v -> v.getInfo().equals(catalyst)).findAny();
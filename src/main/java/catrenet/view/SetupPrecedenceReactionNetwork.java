@@ -20,53 +20,61 @@
 
 package catrenet.view;
 
-import catrenet.model.Reaction;
+import catrenet.algorithm.ClosureEngine;
+import catrenet.model.CompiledReactionSystem;
 import catrenet.model.ReactionSystem;
 import jloda.graph.Edge;
 import jloda.graph.Graph;
 import jloda.graph.Node;
-import jloda.util.IteratorUtils;
-import jloda.util.SetUtils;
+import jloda.util.Pair;
+import jloda.util.ProgramExecutorService;
 
-import java.util.HashMap;
-import java.util.HashSet;
-
-import static catrenet.algorithm.Utilities.computeClosure;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 public class SetupPrecedenceReactionNetwork {
 	/**
-	 * apply
+	 * apply. There is an edge from r1 to r2, if r1 produces a reactant of r2 that is not contained in the closure of the
+	 * food set when r1 is removed. The knockout closure of each r1 is computed once, the candidates r2 are the consumers of
+	 * the molecules that are missing from it, and all r1 are processed in parallel
 	 */
 	public static void apply(Graph reactionGraph, ReactionSystem reactionSystem) {
 		System.err.println("Computing Precedence Reaction Network");
 
 		reactionGraph.clear();
 
+		var compiled = new CompiledReactionSystem(reactionSystem);
 
-		var allReactions = reactionSystem.getReactions();
-
-		final var reactionNodeMap = new HashMap<Reaction, Node>();
-
-		allReactions.forEach(r -> reactionNodeMap.put(r, reactionGraph.newNode(r)));
-
-		var food = reactionSystem.getFoods();
+		var nodes = new Node[compiled.getNumberOfReactions()];
+		for (var r = 0; r < nodes.length; r++) {
+			nodes[r] = reactionGraph.newNode(compiled.getReaction(r));
+		}
 
-		for (var r1 : allReactions) {
-			for (var r2 : allReactions) {
-				var intersection = IteratorUtils.asList(SetUtils.intersection(r1.getProducts(), r2.getReactants()));
-				if (!intersection.isEmpty()) {
-					var reactions = new HashSet<>(allReactions);
-					reactions.remove(r1);
-					var closure = computeClosure(food, reactions);
-					for (var x : intersection) {
-						if (!closure.contains(x)) {
-							var v = reactionNodeMap.get(r1);
-							var w = reactionNodeMap.get(r2);
-							reactionGraph.newEdge(v, w, EdgeType.Association);
-							break;
-						}
+		var successors = new BitSet[compiled.getNumberOfReactions()];
+		var engine = ThreadLocal.withInitial(() -> new ClosureEngine(compiled));
+
+		var pool = new ForkJoinPool(ProgramExecutorService.getNumberOfCoresToUse());
+		try {
+			pool.submit(() -> IntStream.range(0, successors.length).parallel().forEach(r1 -> {
+				var reactions = compiled.getAllReactions();
+				reactions.clear(r1);
+				var closure = engine.get().computeClosure(compiled.getFoods(), reactions);
+				successors[r1] = new BitSet();
+				for (var x : compiled.getProducts(r1)) {
+					if (!closure.get(x)) {
+						for (var r2 : compiled.getReactionsWithReactant(x))
+							successors[r1].set(r2);
 					}
 				}
+			})).join();
+		} finally {
+			pool.shutdown();
+		}
+
+		for (var r1 = 0; r1 < successors.length; r1++) {
+			for (var r2 = successors[r1].nextSetBit(0); r2 >= 0; r2 = successors[r1].nextSetBit(r2 + 1)) {
+				reactionGraph.newEdge(nodes[r1], nodes[r2], EdgeType.Association);
 			}
 		}
 
@@ -80,18 +88,53 @@ public class SetupPrecedenceReactionNetwork {
 		}
 	}
 
+	/**
+	 * removes all edges from u to w, for which w can also be reached from u by a path that does not use the edge.
+	 * Reachability is computed on the graph of strongly connected components, as one bit set per component, in reverse
+	 * topological order. Of several edges between the same two components, only the first is kept. Edges inside a strongly
+	 * connected component are kept, so that reachability is never changed
+	 */
 	public static void applyTransitiveReduction(Graph graph) {
-		final var toDelete = new HashSet<Edge>();
+		var component = new HashMap<Node, Integer>();
+		var components = computeStronglyConnectedComponents(graph, component);
+
+		// reach[c]: components reachable from c by a path of at least one edge, components are numbered in reverse topological order
+		var reach = new BitSet[components];
+		var successors = new BitSet[components];
+		for (var c = 0; c < components; c++) {
+			successors[c] = new BitSet();
+			reach[c] = new BitSet();
+		}
 		for (var e : graph.edges()) {
-			for (var f : e.getSource().outEdges()) {
-				if (f != e) {
-					for (var g : f.getTarget().outEdges()) {
-						if (g.getTarget() == e.getTarget()) {
-							toDelete.add(e);
-							break;
-						}
-					}
+			int c = component.get(e.getSource());
+			int d = component.get(e.getTarget());
+			if (c != d)
+				successors[c].set(d);
+		}
+		for (var c = 0; c < components; c++) {
+			for (var d = successors[c].nextSetBit(0); d >= 0; d = successors[c].nextSetBit(d + 1)) {
+				reach[c].set(d);
+				reach[c].or(reach[d]);
+			}
+		}
+
+		final var kept = new BitSet[components]; // components d for which one edge from c to d is kept
+		for (var c = 0; c < components; c++) {
+			kept[c] = new BitSet();
+		}
+		final var toDelete = new ArrayList<Edge>();
+		for (var e : graph.edges()) {
+			int c = component.get(e.getSource());
+			int d = component.get(e.getTarget());
+			if (c != d) {
+				var redundant = kept[c].get(d);
+				for (var other = successors[c].nextSetBit(0); !redundant && other >= 0; other = successors[c].nextSetBit(other + 1)) {
+					redundant = (other != d && reach[other].get(d));
 				}
+				if (redundant)
+					toDelete.add(e);
+				else
+					kept[c].set(d);
 			}
 		}
 		for (var e : toDelete) {
@@ -99,4 +142,61 @@ public class SetupPrecedenceReactionNetwork {
 		}
 	}
 
+	/**
+	 * computes the strongly connected components using Tarjan's algorithm, without recursion
+	 *
+	 * @param component is set to the component number of each node. Components are numbered in reverse topological order,
+	 *                  so all edges between different components go from a higher number to a lower one
+	 * @return number of components
+	 */
+	private static int computeStronglyConnectedComponents(Graph graph, Map<Node, Integer> component) {
+		var index = new HashMap<Node, Integer>();
+		var lowLink = new HashMap<Node, Integer>();
+		var stack = new ArrayDeque<Node>();
+		var onStack = new HashSet<Node>();
+		var components = 0;
+
+		for (var root : graph.nodes()) {
+			if (index.containsKey(root))
+				continue;
+			var callStack = new ArrayDeque<Pair<Node, Iterator<Edge>>>();
+			index.put(root, index.size());
+			lowLink.put(root, index.get(root));
+			stack.push(root);
+			onStack.add(root);
+			callStack.push(new Pair<>(root, root.outEdges().iterator()));
+
+			while (!callStack.isEmpty()) {
+				var v = callStack.peek().getFirst();
+				var edges = callStack.peek().getSecond();
+				if (edges.hasNext()) {
+					var w = edges.next().getTarget();
+					if (!index.containsKey(w)) {
+						index.put(w, index.size());
+						lowLink.put(w, index.get(w));
+						stack.push(w);
+						onStack.add(w);
+						callStack.push(new Pair<>(w, w.outEdges().iterator()));
+					} else if (onStack.contains(w))
+						lowLink.put(v, Math.min(lowLink.get(v), index.get(w)));
+				} else {
+					callStack.pop();
+					if (!callStack.isEmpty()) {
+						var u = callStack.peek().getFirst();
+						lowLink.put(u, Math.min(lowLink.get(u), lowLink.get(v)));
+					}
+					if (lowLink.get(v).equals(index.get(v))) {
+						Node w;
+						do {
+							w = stack.pop();
+							onStack.remove(w);
+							component.put(w, components);
+						} while (w != v);
+						components++;
+					}
+				}
+			}
+		}
+		return components;
+	}
 }
@@ -19,7 +19,7 @@
 
 package catrenet.window;
 
-import catrenet.model.ReactionSystem;
+import catrenet.model.MoleculeTypePool;
 import catrenet.settings.ArrowNotation;
 import catrenet.settings.ReactionNotation;
 import javafx.beans.property.*;
@@ -33,7 +33,8 @@ public class Document {
     private final BooleanProperty dirty = new SimpleBooleanProperty(false);
     private final BooleanProperty warnedAboutInhibitions = new SimpleBooleanProperty(false);
 
-    private final ObservableMap<String, ReactionSystem> reactionSystems = FXCollections.observableHashMap();
+    private final MoleculeTypePool moleculeTypePool = new MoleculeTypePool(); // shared by all reaction systems of this document
+    private final ObservableMap<String, ObservableReactionSystem> reactionSystems = FXCollections.observableHashMap();
     private final ObjectProperty<Graph> reactionDependencyNetwork = new SimpleObjectProperty<>(this, "reactionDependencyNetwork");
     private final ObjectProperty<Graph> moleculeDependencyNetwork = new SimpleObjectProperty<>(this, "moleculeDependencyNetwork");
 
@@ -51,23 +52,34 @@ public class Document {
 		ProgramProperties.track(useDisplayLabels, true);
     }
 
-    public ReactionSystem getInputReactionSystem() {
+    public ObservableReactionSystem getInputReactionSystem() {
         return getReactionSystem("Input");
     }
 
-    public ReactionSystem getReactionSystem(String name) {
-        ReactionSystem inputReactionSystem = reactionSystems.get(name);
+    public ObservableReactionSystem getReactionSystem(String name) {
+        ObservableReactionSystem inputReactionSystem = reactionSystems.get(name);
         if (inputReactionSystem == null) {
-            inputReactionSystem = new ReactionSystem(name);
+            inputReactionSystem = new ObservableReactionSystem(name, moleculeTypePool);
             reactionSystems.put(name, inputReactionSystem);
         }
         return inputReactionSystem;
     }
 
-    public ObservableMap<String, ReactionSystem> getReactionSystems() {
+    public ObservableMap<String, ObservableReactionSystem> getReactionSystems() {
         return reactionSystems;
     }
 
+    public MoleculeTypePool getMoleculeTypePool() {
+        return moleculeTypePool;
+    }
+
+    /**
+     * releases the molecule types of this document, called when its window is closed
+     */
+    public void close() {
+        moleculeTypePool.close();
+    }
+
     public boolean isDirty() {
         return dirty.get();
     }
@@ -21,7 +21,6 @@ package catrenet.window;
 
 import catrenet.io.CRSFileFilter;
 import catrenet.io.FileOpener;
-import catrenet.model.ReactionSystem;
 import catrenet.tab.TabManager;
 import catrenet.view.ReactionGraphView;
 import javafx.application.Platform;
@@ -78,6 +77,8 @@ public class MainWindow implements IMainWindow {
 
 	private final IntegerProperty maxGraphDisplaySize = new SimpleIntegerProperty(this, "maxGraphDisplaySize");
 
+	private final BooleanProperty useResultCache = new SimpleBooleanProperty(this, "useResultCache");
+
     /**
      * constructor
      */
@@ -87,6 +88,7 @@ public class MainWindow implements IMainWindow {
         Parent root;
         {
             ProgramProperties.track(maxGraphDisplaySize, 500);
+            ProgramProperties.track(useResultCache, true);
 
             var fxmlLoader = new FXMLLoader();
             try (var ins = StatementFilter.applyMobileFXML(Objects.requireNonNull(MainWindowController.class.getResource("MainWindow.fxml")).openStream(), ProgramProperties.isDesktop())) {
@@ -170,6 +172,7 @@ public class MainWindow implements IMainWindow {
     @Override
     public void close() {
         stage.hide();
+        document.close();
     }
 
     public UndoManager getUndoManager() {
@@ -192,11 +195,11 @@ public class MainWindow implements IMainWindow {
         return document;
     }
 
-    public ReactionSystem getInputReactionSystem() {
+    public ObservableReactionSystem getInputReactionSystem() {
         return document.getInputReactionSystem();
     }
 
-    public ReactionSystem getReactionSystem(String name) {
+    public ObservableReactionSystem getReactionSystem(String name) {
         return document.getReactionSystem(name);
     }
 
@@ -236,4 +239,15 @@ public class MainWindow implements IMainWindow {
 	public IntegerProperty maxGraphDisplaySizeProperty() {
 		return maxGraphDisplaySize;
 	}
+
+	/**
+	 * should computed results be reused from, and stored in, the result cache?
+	 */
+	public boolean isUseResultCache() {
+		return useResultCache.get();
+	}
+
+	public BooleanProperty useResultCacheProperty() {
+		return useResultCache;
+	}
 }
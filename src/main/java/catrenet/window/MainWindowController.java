@@ -80,6 +80,12 @@ public class MainWindowController {
 	@FXML
 	private CheckMenuItem computeImportanceCheckMenuItem;
 
+	@FXML
+	private CheckMenuItem useResultCacheCheckMenuItem;
+
+	@FXML
+	private MenuItem clearResultCacheMenuItem;
+
 	@FXML
 	private MenuButton computeNetworkMenuButton;
 
@@ -911,6 +917,14 @@ public class MainWindowController {
 		return computeImportanceCheckMenuItem;
 	}
 
+	public CheckMenuItem getUseResultCacheCheckMenuItem() {
+		return useResultCacheCheckMenuItem;
+	}
+
+	public MenuItem getClearResultCacheMenuItem() {
+		return clearResultCacheMenuItem;
+	}
+
 	public MenuItem getGraphEmbedderIterationsMenuItem() {
 		return graphEmbedderIterationsMenuItem;
 	}
@@ -65,6 +65,7 @@ import jloda.util.StringUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.time.Duration;
@@ -364,7 +365,7 @@ public class MainWindowPresenter {
                         var algorithm = new MinRAFGeneratingElement();
                         algorithm.numberOfRandomInsertionOrdersProperty().set(targetsDialog.getRandomOrders());
                         for (var name : targetNames) {
-                            algorithm.getTargets().add(MoleculeType.valueOf(name));
+                            algorithm.getTargets().add(mainWindow.getDocument().getMoleculeTypePool().valueOf(name));
                         }
                         RunAlgorithm.apply(mainWindow, mainWindow.getInputReactionSystem(), algorithm, runningListener, true);
                     }
@@ -755,9 +756,15 @@ public class MainWindowPresenter {
         controller.getComputeImportanceCheckMenuItem().selectedProperty().addListener((c, o, n) -> computeImportance = n);
         controller.getComputeImportanceCheckMenuItem().disableProperty().bind(controller.getRunRAFMenuItem().disableProperty());
 
+        controller.getUseResultCacheCheckMenuItem().selectedProperty().bindBidirectional(mainWindow.useResultCacheProperty());
+        controller.getClearResultCacheMenuItem().setOnAction(e -> {
+            ResultCache.getInstance().clear();
+            NotificationManager.showInformation("Result cache cleared");
+        });
+
         mainWindow.getInputReactionSystem().sizeProperty().addListener((c, o, n) -> controller.getInputReactionsSizeLabel().setText(String.format("%,d", n.intValue())));
         mainWindow.getInputReactionSystem().foodSizeProperty().addListener((c, o, n) -> {
-            if (mainWindow.getInputReactionSystem().getFoods().contains(MoleculeType.valueOf("$")))
+            if (mainWindow.getInputReactionSystem().getFoods().contains(FORMAL_FOOD))
                 controller.getInputFoodSizeLabel().setText(String.format("%,d (plus the formal item '$')", n.intValue() - 1));
             else
                 controller.getInputFoodSizeLabel().setText(String.format("%,d", n.intValue()));
@@ -788,8 +795,14 @@ public class MainWindowPresenter {
         controller.getListInhibitorsMenuItem().disableProperty().bind(disableRunProperty);
 
         controller.getStratifyReactionsAndMoleculesMenuItem().setOnAction(e -> {
-            var text = Stratification.report(mainWindow.getInputReactionSystem());
-            controller.getLogTextArea().setText(controller.getLogTextArea().getText() + "\n" + text);
+            // write the report directly to the log, rather than building it as one string first
+            var w = new PrintWriter(mainWindow.getLogStream());
+            try {
+                Stratification.report(mainWindow.getInputReactionSystem(), w);
+            } catch (IOException ex) {
+                NotificationManager.showError("Stratification failed: " + ex.getMessage());
+            }
+            w.flush();
             selectLogTab(controller);
             Platform.runLater(() -> controller.getLogTextArea().setScrollTop(Double.MAX_VALUE));
         });
@@ -0,0 +1,87 @@
+/*
+ *  ObservableReactionSystem.java Copyright (C) 2025 Daniel H. Huson
+ *
+ *  (Some files contain contributions from other authors, who are then mentioned separately.)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package catrenet.window;
+
+import catrenet.model.MoleculeType;
+import catrenet.model.MoleculeTypePool;
+import catrenet.model.Reaction;
+import catrenet.model.ReactionSystem;
+import javafx.beans.binding.Bindings;
+import javafx.beans.property.*;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+import java.util.Collection;
+
+/**
+ * a reaction system whose reactions and food are kept in observable lists, for use in the GUI
+ */
+public class ObservableReactionSystem extends ReactionSystem {
+	private final IntegerProperty size = new SimpleIntegerProperty();
+	private final IntegerProperty foodSize = new SimpleIntegerProperty();
+	private final BooleanProperty inhibitorsPresent = new SimpleBooleanProperty(false);
+
+	/**
+	 * construct an observable reaction system that interns its molecule types in the given pool
+	 */
+	public ObservableReactionSystem(String name, MoleculeTypePool moleculeTypePool) {
+		super(name, FXCollections.observableArrayList(), FXCollections.observableArrayList(), moleculeTypePool);
+		size.bind(Bindings.size(getReactions()));
+		foodSize.bind(Bindings.size(getFoods()));
+	}
+
+	@Override
+	public ObservableList<Reaction> getReactions() {
+		return (ObservableList<Reaction>) super.getReactions();
+	}
+
+	@Override
+	public ObservableList<MoleculeType> getFoods() {
+		return (ObservableList<MoleculeType>) super.getFoods();
+	}
+
+	@Override
+	public void setReactions(Collection<Reaction> reactions) {
+		getReactions().setAll(reactions);
+	}
+
+	@Override
+	public void setFoods(Collection<MoleculeType> foods) {
+		getFoods().setAll(foods);
+	}
+
+	public ReadOnlyIntegerProperty sizeProperty() {
+		return size;
+	}
+
+	public ReadOnlyIntegerProperty foodSizeProperty() {
+		return foodSize;
+	}
+
+	@Override
+	protected void setInhibitorsPresent(boolean inhibitorsPresent) {
+		super.setInhibitorsPresent(inhibitorsPresent);
+		this.inhibitorsPresent.set(inhibitorsPresent);
+	}
+
+	public ReadOnlyBooleanProperty inhibitorsPresentProperty() {
+		return inhibitorsPresent;
+	}
+}
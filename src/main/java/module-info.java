@@ -5,6 +5,8 @@ module catrenet {
     requires transitive javafx.fxml;
 	requires transitive javafx.web;
 	requires commons.math3;
+	requires java.sql;
+	requires org.xerial.sqlitejdbc;
 
 	exports catrenet.io;
 	exports catrenet.algorithm;